@@ -0,0 +1,182 @@
+package com.example.querydsl.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.QuerydslApplication;
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.MemberTeamDto;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.MemberJpaRepository;
+import com.example.querydsl.repository.MemberRepository;
+import com.example.querydsl.repository.MemberTestRepository;
+
+/**
+ * 리포지토리 쿼리 방식별 벤치마크.
+ * 내장 H2(in-memory)에 datasetSize 만큼 회원을 넣고, 같은 검색 조건으로 각 방식을 비교한다.
+ * 요청 하나를 흉내내기 위해 매 호출을 read-only 트랜잭션으로 감싼다.
+ *
+ * count 캐시는 끄고 측정한다. (count 쿼리 비용까지 비교하기 위해)
+ * QueryShapeCache 를 쓰는 메소드(search, searchByBuilder, searchPageComplex, applyPaginationByShape)는
+ * warmup 이후 JPQL 생성 비용이 빠진 수치다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemberRepositoryBenchmark {
+
+	private static final int TEAM_COUNT = 10;
+	private static final int INSERT_CHUNK_SIZE = 1000;
+
+	@Param({"1000", "100000"})
+	private int datasetSize;
+
+	private ConfigurableApplicationContext context;
+	private TransactionTemplate readOnlyTransaction;
+
+	private MemberJpaRepository memberJpaRepository;
+	private MemberRepository memberRepository;
+	private MemberTestRepository memberTestRepository;
+
+	private MemberSearchCondition condition;
+	private Pageable pageable;
+
+	@Setup
+	public void setUp() {
+		context = new SpringApplicationBuilder(QuerydslApplication.class)
+			.web(WebApplicationType.NONE)
+			.run(
+				"--spring.profiles.active=benchmark", // local 프로필의 InitData 가 돌지 않도록
+				"--spring.main.banner-mode=off",
+				"--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+				"--spring.jpa.properties.hibernate.format_sql=false",
+				"--spring.jpa.properties.hibernate.use_sql_comments=false",
+				"--decorator.datasource.enabled=false", // p6spy 로그 끄기
+				"--logging.level.root=warn",
+				"--logging.level.org.hibernate.sql=warn",
+				"--querydsl.count-cache.enabled=false"
+			);
+
+		PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+		readOnlyTransaction = new TransactionTemplate(transactionManager);
+		readOnlyTransaction.setReadOnly(true);
+
+		memberJpaRepository = context.getBean(MemberJpaRepository.class);
+		memberRepository = context.getBean(MemberRepository.class);
+		memberTestRepository = context.getBean(MemberTestRepository.class);
+
+		insertDataset(new TransactionTemplate(transactionManager), context.getBean(EntityManager.class));
+
+		// 전체의 약 40% 가 걸리는 조건. applyPagination2 의 count 쿼리가 team 을 조인하지 않아서 teamName 조건은 넣지 않는다.
+		condition = new MemberSearchCondition();
+		condition.setAgeGoe(20);
+		condition.setAgeLoe(59);
+		pageable = PageRequest.of(10, 20);
+	}
+
+	private void insertDataset(TransactionTemplate transaction, EntityManager em) {
+		transaction.execute(status -> {
+			List<Team> teams = new ArrayList<>();
+			for (int i = 0; i < TEAM_COUNT; i++) {
+				Team team = Team.builder().name("team" + i).build();
+				em.persist(team);
+				teams.add(team);
+			}
+
+			for (int i = 0; i < datasetSize; i++) {
+				Team team = em.getReference(Team.class, teams.get(i % TEAM_COUNT).getId());
+				em.persist(Member.builder().username("member" + i).age(i % 100).team(team).build());
+				if ((i + 1) % INSERT_CHUNK_SIZE == 0) {
+					em.flush();
+					em.clear();
+				}
+			}
+			return null;
+		});
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+	}
+
+	// BooleanBuilder vs where 다중 파라미터
+
+	@Benchmark
+	public List<MemberTeamDto> searchByBuilder() {
+		return readOnlyTransaction.execute(status -> memberJpaRepository.searchByBuilder(condition));
+	}
+
+	@Benchmark
+	public List<MemberTeamDto> search() {
+		return readOnlyTransaction.execute(status -> memberJpaRepository.search(condition));
+	}
+
+	// spring data 페이징
+
+	@Benchmark
+	public Page<MemberTeamDto> searchPageSimple() {
+		return readOnlyTransaction.execute(status -> memberRepository.searchPageSimple(condition, pageable));
+	}
+
+	@Benchmark
+	public Page<MemberTeamDto> searchPageComplex() {
+		return readOnlyTransaction.execute(status -> memberRepository.searchPageComplex(condition, pageable));
+	}
+
+	@Benchmark
+	public Page<MemberTeamDto> searchPageSimple_QuerydslRepositorySupport() {
+		return readOnlyTransaction.execute(
+			status -> memberRepository.searchPageSimple_QuerydslRepositorySupport(condition, pageable));
+	}
+
+	// Querydsl4RepositorySupport 페이징
+
+	@Benchmark
+	public Page<Member> searchPageByApplyPage() {
+		return readOnlyTransaction.execute(status -> memberTestRepository.searchPageByApplyPage(condition, pageable));
+	}
+
+	@Benchmark
+	public Page<Member> applyPagination() {
+		return readOnlyTransaction.execute(status -> memberTestRepository.applyPagination(condition, pageable));
+	}
+
+	@Benchmark
+	public Page<Member> applyPagination2() {
+		return readOnlyTransaction.execute(status -> memberTestRepository.applyPagination2(condition, pageable));
+	}
+
+	@Benchmark
+	public Page<Member> applyPaginationByShape() {
+		return readOnlyTransaction.execute(status -> memberTestRepository.applyPaginationByShape(condition, pageable));
+	}
+}
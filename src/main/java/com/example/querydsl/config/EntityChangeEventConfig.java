@@ -0,0 +1,37 @@
+package com.example.querydsl.config;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.querydsl.event.EntityChangePublisher;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 엔티티 변경 시 EntityChangedEvent 를 발행하도록 hibernate 이벤트 리스너 등록.
+ * 캐시 무효화 등 엔티티 변경에 반응해야 하는 곳은 EntityChangedEvent 를 구독하면 된다.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class EntityChangeEventConfig {
+
+	private final EntityManagerFactory entityManagerFactory;
+	private final ApplicationEventPublisher eventPublisher;
+
+	@PostConstruct
+	public void registerListeners() {
+		SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+		EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+
+		EntityChangePublisher publisher = new EntityChangePublisher(eventPublisher);
+		registry.appendListeners(EventType.POST_INSERT, publisher);
+		registry.appendListeners(EventType.POST_UPDATE, publisher);
+		registry.appendListeners(EventType.POST_DELETE, publisher);
+	}
+}
@@ -5,6 +5,8 @@ import javax.persistence.EntityManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.example.querydsl.repository.support.InstrumentedJPAQueryFactory;
+import com.example.querydsl.repository.support.QueryMetrics;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 
 import lombok.RequiredArgsConstructor;
@@ -18,8 +20,12 @@ public class JpaQueryFactoryConfig {
 
 	private final EntityManager em; // 순수 JPA 사용하려면 entity manager 필요
 
+	/**
+	 * 쿼리 실행 시간과 row 수를 QueryMetrics 에 기록하는 JPAQueryFactory
+	 * 트랜잭션에 묶인 공유 EntityManager 를 사용하므로, 라우팅 사용 시(RoutingDataSourceConfig) 트랜잭션의 readOnly 에 따라 replica/primary 로 간다.
+	 */
 	@Bean
-	public JPAQueryFactory jpaQueryFactory(EntityManager em) {
-		return new JPAQueryFactory(em);
+	public JPAQueryFactory jpaQueryFactory(EntityManager em, QueryMetrics queryMetrics) {
+		return new InstrumentedJPAQueryFactory(em, queryMetrics);
 	}
 }
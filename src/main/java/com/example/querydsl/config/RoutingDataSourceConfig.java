@@ -0,0 +1,81 @@
+package com.example.querydsl.config;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.example.querydsl.datasource.ReplicaLagMonitor;
+import com.example.querydsl.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 읽기 전용 트랜잭션은 replica, 나머지는 primary 로 보내는 DataSource.
+ * querydsl.datasource.routing.enabled=true 일 때만 등록되고, 아니면 spring.datasource 하나만 사용한다.
+ * JPA(EntityManager, JPAQueryFactory) 는 @Primary 인 dataSource 를 사용하므로 별도 설정 없이 라우팅된다.
+ * 요청 하나의 트랜잭션들이 첫 커넥션에 묶이지 않도록 spring.jpa.open-in-view 는 꺼진다. (RoutingEnvironmentPostProcessor)
+ */
+@Configuration
+@ConditionalOnProperty(name = "querydsl.datasource.routing.enabled", havingValue = "true")
+public class RoutingDataSourceConfig {
+
+	@Bean
+	@Primary
+	@ConfigurationProperties("spring.datasource")
+	public DataSourceProperties primaryDataSourceProperties() {
+		return new DataSourceProperties();
+	}
+
+	@Bean
+	@ConfigurationProperties("querydsl.datasource.routing.replica")
+	public DataSourceProperties replicaDataSourceProperties() {
+		return new DataSourceProperties();
+	}
+
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(
+		@Qualifier("primaryDataSourceProperties") DataSourceProperties properties) {
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	@Bean
+	@ConfigurationProperties("querydsl.datasource.routing.replica.hikari")
+	public HikariDataSource replicaDataSource(
+		@Qualifier("replicaDataSourceProperties") DataSourceProperties properties) {
+		return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	public ReplicaLagMonitor replicaLagMonitor(@Qualifier("replicaDataSource") DataSource replicaDataSource,
+		@Value("${querydsl.datasource.routing.lag-query:}") String lagQuery,
+		@Value("${querydsl.datasource.routing.max-lag:5s}") Duration maxLag,
+		@Value("${querydsl.datasource.routing.check-interval:1s}") Duration checkInterval) {
+		return new ReplicaLagMonitor(replicaDataSource, lagQuery, maxLag, checkInterval);
+	}
+
+	/**
+	 * 트랜잭션 시작 시점에는 readOnly 여부를 알 수 없으므로 첫 SQL 을 실행할 때 커넥션을 얻는다.
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+		@Qualifier("replicaDataSource") DataSource replicaDataSource, ReplicaLagMonitor replicaLagMonitor,
+		MeterRegistry meterRegistry) {
+		ReplicaRoutingDataSource routingDataSource = new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource,
+			replicaLagMonitor, meterRegistry);
+		routingDataSource.afterPropertiesSet();
+		return new LazyConnectionDataSourceProxy(routingDataSource);
+	}
+}
@@ -0,0 +1,29 @@
+package com.example.querydsl.config;
+
+import java.util.Collections;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+
+/**
+ * querydsl.datasource.routing.enabled=true 면 spring.jpa.open-in-view 를 끈다. (META-INF/spring.factories 로 등록)
+ *
+ * open-in-view 는 요청 전체에서 EntityManager 하나를 쓰고, hibernate 는 그 EntityManager 가 처음 얻은 커넥션을
+ * 요청이 끝날 때까지 잡고 있는다. (DELAYED_ACQUISITION_AND_HOLD)
+ * 그래서 요청의 첫 트랜잭션이 읽기 전용이면 이후 쓰기 트랜잭션도 replica 커넥션으로, 반대면 읽기도 primary 로 가게 된다.
+ * 끄면 트랜잭션마다 EntityManager 와 커넥션을 새로 얻으므로 트랜잭션마다 라우팅된다.
+ */
+public class RoutingEnvironmentPostProcessor implements EnvironmentPostProcessor {
+
+	private static final String PROPERTY_SOURCE_NAME = "querydslRouting";
+
+	@Override
+	public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+		if (environment.getProperty("querydsl.datasource.routing.enabled", Boolean.class, false)) {
+			environment.getPropertySources().addFirst(new MapPropertySource(PROPERTY_SOURCE_NAME,
+				Collections.singletonMap("spring.jpa.open-in-view", "false")));
+		}
+	}
+}
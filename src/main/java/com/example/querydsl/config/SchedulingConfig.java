@@ -0,0 +1,12 @@
+package com.example.querydsl.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * @Scheduled 사용 (TeamStatsReadModel 의 주기적인 DB 대사)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,54 @@
+package com.example.querydsl.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * hibernate 2차 캐시 region 별 hit/miss 통계.
+ * hibernate.generate_statistics=true 일 때만 집계된다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class CacheStatsController {
+	private final EntityManagerFactory entityManagerFactory;
+
+	@GetMapping("/cache/stats")
+	public Map<String, Object> secondLevelCacheStats() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+		Map<String, Object> regions = new LinkedHashMap<>();
+		for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+			CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+			if (region == null) {
+				continue;
+			}
+			Map<String, Object> regionStats = new LinkedHashMap<>();
+			regionStats.put("hit", region.getHitCount());
+			regionStats.put("miss", region.getMissCount());
+			regionStats.put("put", region.getPutCount());
+			regionStats.put("size", region.getElementCountInMemory());
+			regions.put(regionName, regionStats);
+		}
+
+		Map<String, Object> queryCache = new LinkedHashMap<>();
+		queryCache.put("hit", statistics.getQueryCacheHitCount());
+		queryCache.put("miss", statistics.getQueryCacheMissCount());
+		queryCache.put("put", statistics.getQueryCachePutCount());
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("statisticsEnabled", statistics.isStatisticsEnabled());
+		result.put("regions", regions);
+		result.put("queryCache", queryCache);
+		return result;
+	}
+}
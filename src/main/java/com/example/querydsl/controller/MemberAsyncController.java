@@ -0,0 +1,49 @@
+package com.example.querydsl.controller;
+
+import java.util.List;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.MemberTeamDto;
+import com.example.querydsl.repository.MemberJpaRepository;
+import com.example.querydsl.service.AsyncSearchExecutor;
+import com.example.querydsl.service.MemberSearchService;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * MemberController 의 /v1 ~ /v3 검색을 전용 스레드 풀(AsyncSearchExecutor)에서 실행하는 버전.
+ * 몰리면 기다리지 않고 503 으로 응답한다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class MemberAsyncController {
+	private final MemberJpaRepository memberJpaRepository;
+	private final MemberSearchService memberSearchService;
+	private final AsyncSearchExecutor asyncSearchExecutor;
+
+	/**
+	 * /v1/members 는 응답에 바로 쓰는 스트리밍이라 요청 스레드를 잡고 있으므로, 여기서는 List 로 모아서 내려준다.
+	 */
+	@GetMapping("/v1/members/async")
+	public DeferredResult<List<MemberTeamDto>> searchMemberV1Async(MemberSearchCondition condition) {
+		return asyncSearchExecutor.submit("v1", () -> memberJpaRepository.search(condition));
+	}
+
+	@GetMapping("/v2/members/async")
+	public DeferredResult<Page<MemberTeamDto>> searchMemberV2Async(MemberSearchCondition condition,
+		Pageable pageable) {
+		return asyncSearchExecutor.submit("v2", () -> memberSearchService.searchPageSimple(condition, pageable));
+	}
+
+	@GetMapping("/v3/members/async")
+	public DeferredResult<Page<MemberTeamDto>> searchMemberV3Async(MemberSearchCondition condition,
+		Pageable pageable) {
+		return asyncSearchExecutor.submit("v3", () -> memberSearchService.searchPageComplex(condition, pageable));
+	}
+}
@@ -1,16 +1,41 @@
 package com.example.querydsl.controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import com.example.querydsl.datasource.ReplicaConsistency;
+import com.example.querydsl.dto.MemberBulkResult;
+import com.example.querydsl.dto.MemberKeysetCondition;
+import com.example.querydsl.dto.MemberKeysetSlice;
 import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.MemberSuggestion;
 import com.example.querydsl.dto.MemberTeamDto;
+import com.example.querydsl.event.DataVersion;
 import com.example.querydsl.repository.MemberJpaRepository;
 import com.example.querydsl.repository.MemberRepository;
+import com.example.querydsl.search.UsernameSuggester;
+import com.example.querydsl.service.MemberBulkService;
+import com.example.querydsl.service.MemberSearchService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.RequiredArgsConstructor;
 
@@ -19,19 +44,127 @@ import lombok.RequiredArgsConstructor;
 public class MemberController {
 	private final MemberJpaRepository memberJpaRepository;
 	private final MemberRepository memberRepository;
+	private final MemberSearchService memberSearchService;
+	private final MemberBulkService memberBulkService;
+	private final UsernameSuggester usernameSuggester;
+	private final ObjectMapper objectMapper;
+	private final DataVersion dataVersion;
+	private final ReplicaConsistency replicaConsistency;
 
+	/**
+	 * 조회 결과를 List 로 모으지 않고 DB 커서에서 읽는 대로 응답에 쓴다.
+	 * format=json(기본값)이면 JSON 배열, format=ndjson 이면 한 줄에 한 건씩 내려준다.
+	 * /v1 ~ /v3 은 데이터 버전(DataVersion)을 ETag 로 내려주고, If-None-Match 가 같으면 쿼리 없이 304 로 응답한다.
+	 * 버전은 검색과 같은 readOnly 트랜잭션에서 읽으므로 replica 에서 읽어도 읽은 데이터의 버전이다.
+	 * 커밋 직후 아직 복제되지 않은 replica 에서 읽은 결과에 새 버전을 붙이지 않도록 그 동안은 primary 에서 조회한다.
+	 */
 	@GetMapping("/v1/members")
-	public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-		return memberJpaRepository.search(condition);
+	public void searchMemberV1(MemberSearchCondition condition, @RequestParam(defaultValue = "json") String format,
+		WebRequest request, HttpServletResponse response) throws IOException {
+		MemberTeamDtoWriter.Format outputFormat = MemberTeamDtoWriter.Format.from(format);
+		try {
+			replicaConsistency.readLatest(() -> dataVersion.read(etag -> {
+				if (request.checkNotModified(etag)) {
+					return null;
+				}
+				response.setContentType(outputFormat.getContentType());
+				response.setCharacterEncoding("UTF-8");
+
+				try (MemberTeamDtoWriter writer = new MemberTeamDtoWriter(outputFormat, objectMapper.getFactory(),
+					response.getOutputStream())) {
+					memberJpaRepository.searchStream(condition, writer::write);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return null;
+			}));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
 	}
 
 	@GetMapping("/v2/members")
-	public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
-		return memberRepository.searchPageSimple(condition, pageable);
+	public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable,
+		WebRequest request) {
+		return replicaConsistency.readLatest(() -> dataVersion.read(etag ->
+			request.checkNotModified(etag) ? null : memberSearchService.searchPageSimple(condition, pageable)));
 	}
 
 	@GetMapping("/v3/members")
-	public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
-		return memberRepository.searchPageComplex(condition, pageable);
+	public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable,
+		WebRequest request) {
+		return replicaConsistency.readLatest(() -> dataVersion.read(etag ->
+			request.checkNotModified(etag) ? null : memberSearchService.searchPageComplex(condition, pageable)));
+	}
+
+	/**
+	 * 전체 건수가 필요없는 무한 스크롤용. count 쿼리 없이 다음 페이지 존재 여부(last)만 내려준다.
+	 */
+	@GetMapping("/v3/members/slice")
+	public Slice<MemberTeamDto> searchMemberV3Slice(MemberSearchCondition condition, Pageable pageable) {
+		return memberRepository.searchSlice(condition, pageable);
+	}
+
+	/**
+	 * keyset 페이징. 다음 페이지는 응답의 nextCursor 를 cursor 파라미터로 넘겨서 조회한다.
+	 * ex) /v4/members?teamName=teamA&orderByAge=true&size=20&cursor=...
+	 */
+	@GetMapping("/v4/members")
+	public MemberKeysetSlice searchMemberV4(MemberSearchCondition condition, MemberKeysetCondition keyset) {
+		return memberRepository.searchKeyset(condition, keyset);
+	}
+
+	/**
+	 * 검색 결과 전체를 DB 커서에서 읽는 대로 파일로 내려준다. 페이지를 여러 번 조회하는 대신 한 번에 순차 조회한다.
+	 * ex) /members/export?teamName=teamA&format=csv&gzip=true
+	 * @param format csv(기본값), ndjson
+	 * @param gzip true 면 gzip 으로 압축해서 Content-Encoding: gzip 으로 내려준다.
+	 */
+	@GetMapping("/members/export")
+	public void exportMembers(MemberSearchCondition condition, @RequestParam(defaultValue = "csv") String format,
+		@RequestParam(defaultValue = "false") boolean gzip, HttpServletResponse response) throws IOException {
+		MemberTeamDtoWriter.Format outputFormat = MemberTeamDtoWriter.Format.from(format);
+		if (outputFormat == MemberTeamDtoWriter.Format.JSON) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "export supports csv or ndjson");
+		}
+		response.setContentType(outputFormat.getContentType());
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+			"attachment; filename=\"members." + outputFormat.name().toLowerCase(Locale.ROOT) + "\"");
+
+		OutputStream out = response.getOutputStream();
+		if (gzip) {
+			response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+			out = new GZIPOutputStream(out, 8192);
+		}
+		try (MemberTeamDtoWriter writer = new MemberTeamDtoWriter(outputFormat, objectMapper.getFactory(), out)) {
+			memberRepository.searchStream(condition, writer::write);
+		}
+	}
+
+	/**
+	 * 회원명 자동완성. DB 를 조회하지 않고 메모리에서 찾는다.
+	 * ex) /members/suggest?prefix=mem&size=10&rank=age
+	 * @param rank recent(최근 가입 순), age(나이 많은 순). 없으면 querydsl.suggest.rank
+	 */
+	@GetMapping("/members/suggest")
+	public List<MemberSuggestion> suggestMembers(@RequestParam String prefix,
+		@RequestParam(defaultValue = "10") int size, @RequestParam(required = false) String rank) {
+		UsernameSuggester.Rank suggestRank;
+		try {
+			suggestRank = rank != null ? UsernameSuggester.Rank.from(rank) : null;
+		} catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "rank supports recent or age");
+		}
+		return usernameSuggester.suggest(prefix, size, suggestRank);
+	}
+
+	/**
+	 * 회원 대량 등록. body 는 [{"username":"member1","age":10,"teamName":"teamA"}, ...]
+	 * body 를 한 번에 읽지 않고 스트리밍으로 파싱하면서 chunk 단위로 저장한다.
+	 */
+	@PostMapping("/members/bulk")
+	public MemberBulkResult bulkInsertMembers(HttpServletRequest request) throws IOException {
+		return memberBulkService.ingest(request.getInputStream());
 	}
 }
@@ -0,0 +1,154 @@
+package com.example.querydsl.controller;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.querydsl.dto.MemberTeamDto;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * MemberTeamDto 를 한 건씩 응답 스트림에 바로 쓴다.
+ * 전체 목록이나 Jackson 트리를 메모리에 만들지 않기 때문에 결과 건수와 상관없이 힙 사용량이 일정하다.
+ */
+public class MemberTeamDtoWriter implements Closeable {
+
+	public enum Format {
+		JSON("application/json"), // [{...},{...}]
+		NDJSON("application/x-ndjson"), // 한 줄에 한 건
+		CSV("text/csv"); // 첫 줄은 헤더
+
+		private final String contentType;
+
+		Format(String contentType) {
+			this.contentType = contentType;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public static Format from(String format) {
+			try {
+				return valueOf(format.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "unsupported format: " + format);
+			}
+		}
+	}
+
+	private static final String CSV_HEADER = "memberId,username,age,teamId,teamName\r\n";
+
+	private final Format format;
+	private final JsonGenerator generator; // JSON, NDJSON
+	private final Writer csvWriter; // CSV
+
+	public MemberTeamDtoWriter(Format format, JsonFactory jsonFactory, OutputStream out) throws IOException {
+		this.format = format;
+		if (format == Format.CSV) {
+			this.generator = null;
+			this.csvWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			csvWriter.write(CSV_HEADER);
+			return;
+		}
+
+		this.csvWriter = null;
+		this.generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8);
+		if (format == Format.JSON) {
+			generator.writeStartArray();
+		}
+	}
+
+	/**
+	 * Consumer 로 넘길 수 있도록 IOException 은 UncheckedIOException 으로 감싼다.
+	 */
+	public void write(MemberTeamDto dto) {
+		try {
+			if (format == Format.CSV) {
+				writeCsv(dto);
+				return;
+			}
+			generator.writeStartObject();
+			writeNumberField("memberId", dto.getMemberId());
+			generator.writeStringField("username", dto.getUsername());
+			generator.writeNumberField("age", dto.getAge());
+			writeNumberField("teamId", dto.getTeamId());
+			generator.writeStringField("teamName", dto.getTeamName());
+			generator.writeEndObject();
+			if (format == Format.NDJSON) {
+				generator.writeRaw('\n');
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * RFC 4180. 쉼표, 따옴표, 줄바꿈이 있는 값만 따옴표로 감싼다. null 은 빈 값
+	 */
+	private void writeCsv(MemberTeamDto dto) throws IOException {
+		if (dto.getMemberId() != null) {
+			csvWriter.write(Long.toString(dto.getMemberId()));
+		}
+		csvWriter.write(',');
+		writeCsvText(dto.getUsername());
+		csvWriter.write(',');
+		csvWriter.write(Integer.toString(dto.getAge()));
+		csvWriter.write(',');
+		if (dto.getTeamId() != null) {
+			csvWriter.write(Long.toString(dto.getTeamId()));
+		}
+		csvWriter.write(',');
+		writeCsvText(dto.getTeamName());
+		csvWriter.write("\r\n");
+	}
+
+	private void writeCsvText(String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++) {
+			char c = value.charAt(i);
+			quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (!quote) {
+			csvWriter.write(value);
+			return;
+		}
+		csvWriter.write('"');
+		csvWriter.write(value.replace("\"", "\"\""));
+		csvWriter.write('"');
+	}
+
+	private void writeNumberField(String name, Long value) throws IOException {
+		if (value == null) {
+			generator.writeNullField(name);
+		} else {
+			generator.writeNumberField(name, value);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (format == Format.CSV) {
+			csvWriter.close();
+			return;
+		}
+		if (format == Format.JSON) {
+			generator.writeEndArray();
+		}
+		generator.close();
+	}
+}
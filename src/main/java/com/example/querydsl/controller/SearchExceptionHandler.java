@@ -0,0 +1,25 @@
+package com.example.querydsl.controller;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import com.example.querydsl.dto.InvalidSearchParameterException;
+
+/**
+ * 검색 파라미터 오류를 400 으로 응답한다.
+ * AsyncSearchExecutor 에서 실패한 검색도 DeferredResult 의 error 로 다시 dispatch 되므로 여기서 처리된다.
+ */
+@RestControllerAdvice
+public class SearchExceptionHandler {
+
+	@ExceptionHandler(InvalidSearchParameterException.class)
+	public void invalidSearchParameter(InvalidSearchParameterException e, HttpServletResponse response)
+		throws IOException {
+		response.sendError(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+	}
+}
@@ -0,0 +1,25 @@
+package com.example.querydsl.controller;
+
+import java.util.List;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.querydsl.dto.TeamStatsDto;
+import com.example.querydsl.stats.TeamStatsReadModel;
+
+import lombok.RequiredArgsConstructor;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamStatsController {
+	private final TeamStatsReadModel teamStatsReadModel;
+
+	/**
+	 * 팀별 회원 수, 나이 합/평균/최대/최소. member 테이블을 조회하지 않고 메모리의 집계를 내려준다.
+	 */
+	@GetMapping("/teams/stats")
+	public List<TeamStatsDto> teamStats() {
+		return teamStatsReadModel.getStats();
+	}
+}
@@ -0,0 +1,68 @@
+package com.example.querydsl.datasource;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.querydsl.event.EntityChangedEvent;
+
+/**
+ * 이 애플리케이션에서 커밋한 변경이 아직 replica 에 복제되지 않았을 수 있는 구간을 추적한다.
+ * (querydsl.datasource.routing.enabled=true 일 때만 동작하고, 아니면 항상 최신으로 본다)
+ *
+ * replica 는 max-lag 보다 지연되면 사용하지 않으므로(ReplicaLagMonitor), 마지막 커밋 후 max-lag + check-interval 이 지나면
+ * replica 에도 반영된 것으로 본다. 그 전에 replica 에서 읽은 값으로 캐시를 채우거나 ETag 를 붙이면
+ * 커밋 전 데이터가 새 버전으로 오래 남기 때문에, 그 구간에는 캐싱하지 않거나(SearchCountCache) primary 에서 읽는다(readLatest).
+ */
+@Component
+public class ReplicaConsistency {
+
+	private final boolean routingEnabled;
+	private final long staleWindowNanos;
+	private volatile long staleUntil = System.nanoTime();
+
+	public ReplicaConsistency(
+		@Value("${querydsl.datasource.routing.enabled:false}") boolean routingEnabled,
+		@Value("${querydsl.datasource.routing.max-lag:5s}") Duration maxLag,
+		@Value("${querydsl.datasource.routing.check-interval:1s}") Duration checkInterval) {
+		this.routingEnabled = routingEnabled;
+		this.staleWindowNanos = maxLag.plus(checkInterval).toNanos();
+	}
+
+	/**
+	 * @return 마지막으로 커밋한 변경이 replica 에 아직 없을 수 있으면 true
+	 */
+	public boolean isReplicaStale() {
+		return routingEnabled && System.nanoTime() - staleUntil < 0;
+	}
+
+	/**
+	 * @return 현재 트랜잭션이 최근 변경이 없을 수 있는 replica 에서 읽고 있으면 true
+	 */
+	public boolean mayReadStaleReplica() {
+		return isReplicaStale() && ReplicaRoutingDataSource.isReplicaRead();
+	}
+
+	/**
+	 * replica 가 최근 변경을 아직 못 받았을 수 있으면 primary 에서 실행한다. 트랜잭션을 시작하기 전에 호출해야 한다.
+	 */
+	public <T> T readLatest(Supplier<T> action) {
+		return isReplicaStale() ? ReplicaRoutingDataSource.forcePrimary(action) : action.get();
+	}
+
+	public void readLatest(Runnable action) {
+		readLatest(() -> {
+			action.run();
+			return null;
+		});
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void afterEntityChangeCommitted(EntityChangedEvent event) {
+		staleUntil = System.nanoTime() + staleWindowNanos;
+	}
+}
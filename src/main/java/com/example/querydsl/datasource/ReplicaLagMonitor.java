@@ -0,0 +1,97 @@
+package com.example.querydsl.datasource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.StringUtils;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * replica 가 읽기 요청을 받아도 되는지 주기적으로 확인한다.
+ * lagQuery 가 있으면 그 결과(초)를 복제 지연으로 보고 maxLag 를 넘으면 사용하지 않는다.
+ * ex) MySQL: select timestampdiff(second, max(ts), now()) from heartbeat (pt-heartbeat 등)
+ * lagQuery 가 없으면 커넥션을 얻을 수 있는지만 확인한다.
+ */
+@Slf4j
+public class ReplicaLagMonitor implements AutoCloseable {
+
+	private final DataSource replica;
+	private final String lagQuery;
+	private final double maxLagSeconds;
+	private final Duration checkInterval;
+	private ScheduledExecutorService scheduler;
+
+	private volatile boolean available;
+	private volatile double lagSeconds = Double.NaN; // 확인 실패 시 NaN
+
+	public ReplicaLagMonitor(DataSource replica, String lagQuery, Duration maxLag, Duration checkInterval) {
+		this.replica = replica;
+		this.lagQuery = lagQuery;
+		this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * 한 번 확인하고 checkInterval 마다 다시 확인한다.
+	 */
+	public void start() {
+		check();
+		scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("replica-lag-monitor-"));
+		scheduler.scheduleWithFixedDelay(this::check, checkInterval.toMillis(), checkInterval.toMillis(),
+			TimeUnit.MILLISECONDS);
+	}
+
+	void check() {
+		boolean wasAvailable = available;
+		try (Connection connection = replica.getConnection()) {
+			lagSeconds = StringUtils.hasText(lagQuery) ? queryLag(connection) : 0;
+			available = lagSeconds <= maxLagSeconds;
+		} catch (SQLException | RuntimeException e) {
+			lagSeconds = Double.NaN;
+			available = false;
+			if (wasAvailable) {
+				log.warn("replica check failed. reads go to primary", e);
+			}
+			return;
+		}
+		if (wasAvailable != available) {
+			log.warn("replica {}. lag={}s, max-lag={}s", available ? "available" : "lagging. reads go to primary",
+				lagSeconds, maxLagSeconds);
+		}
+	}
+
+	private double queryLag(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(lagQuery)) {
+			if (!rs.next()) {
+				throw new SQLException("lag query returned no row: " + lagQuery);
+			}
+			double lag = rs.getDouble(1);
+			return rs.wasNull() ? Double.POSITIVE_INFINITY : lag; // 복제가 멈췄으면 null (ex. Seconds_Behind_Master)
+		}
+	}
+
+	public boolean isAvailable() {
+		return available;
+	}
+
+	public double getLagSeconds() {
+		return lagSeconds;
+	}
+
+	@Override
+	public void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+}
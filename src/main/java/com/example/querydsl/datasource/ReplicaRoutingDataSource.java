@@ -0,0 +1,106 @@
+package com.example.querydsl.datasource;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 읽기 전용 트랜잭션(@Transactional(readOnly = true))은 replica 로, 나머지는 primary 로 보낸다.
+ * replica 가 지연되거나 응답하지 않으면(ReplicaLagMonitor) 읽기 전용이어도 primary 로 보낸다.
+ *
+ * 트랜잭션 매니저는 readOnly 여부를 동기화하기 전에 커넥션을 얻으므로,
+ * 반드시 LazyConnectionDataSourceProxy 로 감싸서 첫 SQL 실행 시점에 커넥션을 얻도록 해야 한다.
+ * 캐시/읽기 모델을 다시 채우는 조회처럼 최신 데이터가 필요하면 forcePrimary 로 감싸서 읽기 전용이어도 primary 로 보낸다.
+ *
+ * 메트릭
+ * - querydsl.datasource.route (route=primary|replica): 커넥션을 얻은 횟수
+ * - querydsl.datasource.replica.fallback: 읽기 전용인데 replica 를 쓸 수 없어서 primary 로 보낸 횟수
+ * - querydsl.datasource.replica.lag: 마지막으로 확인한 복제 지연(초)
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	public enum Route {
+		PRIMARY, REPLICA
+	}
+
+	private static final ThreadLocal<Boolean> PRIMARY_FORCED = new ThreadLocal<>();
+
+	private final ReplicaLagMonitor lagMonitor;
+	private final Map<Route, Counter> routeCounters = new EnumMap<>(Route.class);
+	private final Counter fallbackCounter;
+
+	public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor lagMonitor,
+		MeterRegistry meterRegistry) {
+		this.lagMonitor = lagMonitor;
+
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(Route.PRIMARY, primary);
+		targets.put(Route.REPLICA, replica);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+
+		for (Route route : Route.values()) {
+			routeCounters.put(route, Counter.builder("querydsl.datasource.route")
+				.tag("route", route.name().toLowerCase(Locale.ROOT))
+				.register(meterRegistry));
+		}
+		this.fallbackCounter = meterRegistry.counter("querydsl.datasource.replica.fallback");
+		Gauge.builder("querydsl.datasource.replica.lag", lagMonitor, ReplicaLagMonitor::getLagSeconds)
+			.baseUnit("seconds")
+			.register(meterRegistry);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		Route route = currentRoute();
+		routeCounters.get(route).increment();
+		return route;
+	}
+
+	private Route currentRoute() {
+		if (!isReplicaRead()) {
+			return Route.PRIMARY;
+		}
+		if (!lagMonitor.isAvailable()) {
+			fallbackCounter.increment();
+			return Route.PRIMARY;
+		}
+		return Route.REPLICA;
+	}
+
+	/**
+	 * action 안에서 시작한 트랜잭션은 읽기 전용이어도 primary 로 보낸다. 라우팅을 사용하지 않으면 action 만 실행한다.
+	 * 커넥션은 트랜잭션의 첫 SQL 에서 정해지므로 트랜잭션을 시작하기 전에 감싸야 한다. (이미 replica 커넥션을 얻은 트랜잭션은 바뀌지 않는다)
+	 */
+	public static <T> T forcePrimary(Supplier<T> action) {
+		Boolean previous = PRIMARY_FORCED.get();
+		PRIMARY_FORCED.set(Boolean.TRUE);
+		try {
+			return action.get();
+		} finally {
+			if (previous == null) {
+				PRIMARY_FORCED.remove();
+			} else {
+				PRIMARY_FORCED.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * @return 현재 스레드의 트랜잭션이 replica 로 갈 수 있으면 true. (replica 를 쓸 수 없어서 primary 로 보내는 경우도 true)
+	 */
+	public static boolean isReplicaRead() {
+		return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && PRIMARY_FORCED.get() == null;
+	}
+}
@@ -0,0 +1,16 @@
+package com.example.querydsl.dto;
+
+/**
+ * 요청으로 받은 검색 파라미터(정렬 속성, cursor 등)를 쓸 수 없을 때. 컨트롤러에서는 400 으로 응답한다. (SearchExceptionHandler)
+ * IllegalArgumentException 을 상속하지 않는다. 리포지토리 프록시가 InvalidDataAccessApiUsageException 으로 바꾸기 때문.
+ */
+public class InvalidSearchParameterException extends RuntimeException {
+
+	public InvalidSearchParameterException(String message) {
+		super(message);
+	}
+
+	public InvalidSearchParameterException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
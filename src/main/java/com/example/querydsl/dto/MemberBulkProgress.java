@@ -0,0 +1,21 @@
+package com.example.querydsl.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * chunk 단위 벌크 update/delete 진행 상황. chunk 하나가 커밋될 때마다 전달된다.
+ */
+@Getter
+@ToString
+public class MemberBulkProgress {
+	private final int chunk; // 1부터 시작
+	private final long affectedRows; // 지금까지 변경된 row 수 (누적)
+	private final Long lastMemberId; // 이 chunk 의 마지막 member id. 다음 chunk 는 이 id 다음부터
+
+	public MemberBulkProgress(int chunk, long affectedRows, Long lastMemberId) {
+		this.chunk = chunk;
+		this.affectedRows = affectedRows;
+		this.lastMemberId = lastMemberId;
+	}
+}
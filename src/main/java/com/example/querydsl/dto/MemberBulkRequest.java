@@ -0,0 +1,21 @@
+package com.example.querydsl.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 회원 대량 등록 요청 한 건. 팀은 이름으로 찾고, 없으면 새로 만든다.
+ */
+@Data
+@NoArgsConstructor
+public class MemberBulkRequest {
+	private String username;
+	private int age;
+	private String teamName; // 없으면 팀 없이 등록
+
+	public MemberBulkRequest(String username, int age, String teamName) {
+		this.username = username;
+		this.age = age;
+		this.teamName = teamName;
+	}
+}
@@ -0,0 +1,19 @@
+package com.example.querydsl.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 회원 대량 등록 결과
+ */
+@Getter
+@ToString
+public class MemberBulkResult {
+	private final long memberCount; // 등록한 회원 수
+	private final long createdTeamCount; // 새로 만든 팀 수
+
+	public MemberBulkResult(long memberCount, long createdTeamCount) {
+		this.memberCount = memberCount;
+		this.createdTeamCount = createdTeamCount;
+	}
+}
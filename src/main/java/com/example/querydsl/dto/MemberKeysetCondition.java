@@ -0,0 +1,14 @@
+package com.example.querydsl.dto;
+
+import lombok.Data;
+
+/**
+ * keyset(seek) 페이징 조건.
+ * offset 대신 이전 페이지의 마지막 키(cursor) 다음부터 조회한다.
+ */
+@Data
+public class MemberKeysetCondition {
+	private String cursor; // 이전 응답의 nextCursor. 없으면 첫 페이지
+	private boolean orderByAge; // true면 (age, id) 순, false면 id 순으로 정렬
+	private int size = 20;
+}
@@ -0,0 +1,60 @@
+package com.example.querydsl.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.util.StringUtils;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * keyset 페이징의 continuation token.
+ * id 순 정렬이면 "id", 나이순 정렬이면 "age:id" 를 URL-safe Base64 로 인코딩한다.
+ */
+@Getter
+@ToString
+public class MemberKeysetCursor {
+	private final Integer lastAge;
+	private final Long lastMemberId;
+
+	public MemberKeysetCursor(Integer lastAge, Long lastMemberId) {
+		this.lastAge = lastAge;
+		this.lastMemberId = lastMemberId;
+	}
+
+	public static MemberKeysetCursor of(MemberTeamDto last, boolean orderByAge) {
+		return new MemberKeysetCursor(orderByAge ? last.getAge() : null, last.getMemberId());
+	}
+
+	public String encode() {
+		String raw = lastAge != null ? lastAge + ":" + lastMemberId : String.valueOf(lastMemberId);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param token 이전 응답의 nextCursor
+	 * @param orderByAge 나이순 정렬 여부. token 의 형태와 맞아야 한다.
+	 * @return token 이 비어있으면 null (첫 페이지)
+	 * @throws InvalidSearchParameterException token 을 풀 수 없거나 정렬 방식과 맞지 않으면 (400)
+	 */
+	public static MemberKeysetCursor decode(String token, boolean orderByAge) {
+		if (!StringUtils.hasText(token)) {
+			return null;
+		}
+		try {
+			String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			int separator = raw.indexOf(':');
+			if (orderByAge != (separator >= 0)) {
+				throw new InvalidSearchParameterException("cursor does not match sort order: " + token);
+			}
+			if (separator < 0) {
+				return new MemberKeysetCursor(null, Long.valueOf(raw));
+			}
+			return new MemberKeysetCursor(Integer.valueOf(raw.substring(0, separator)),
+				Long.valueOf(raw.substring(separator + 1)));
+		} catch (IllegalArgumentException e) { // Base64, NumberFormat 오류 포함
+			throw new InvalidSearchParameterException("invalid cursor: " + token, e);
+		}
+	}
+}
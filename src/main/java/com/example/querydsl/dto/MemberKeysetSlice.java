@@ -0,0 +1,21 @@
+package com.example.querydsl.dto;
+
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * keyset 페이징 결과. total count 는 없고, 다음 페이지 조회에 쓸 nextCursor 만 내려준다.
+ */
+@Getter
+public class MemberKeysetSlice {
+	private final List<MemberTeamDto> content;
+	private final boolean hasNext;
+	private final String nextCursor; // hasNext 가 false 면 null
+
+	public MemberKeysetSlice(List<MemberTeamDto> content, boolean hasNext, String nextCursor) {
+		this.content = content;
+		this.hasNext = hasNext;
+		this.nextCursor = nextCursor;
+	}
+}
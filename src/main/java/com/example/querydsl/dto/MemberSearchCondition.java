@@ -1,5 +1,7 @@
 package com.example.querydsl.dto;
 
+import org.springframework.util.StringUtils;
+
 import lombok.Data;
 
 /**
@@ -8,7 +10,22 @@ import lombok.Data;
 @Data
 public class MemberSearchCondition {
 	private String username;
+	private String usernameContains; // 회원명에 포함된 문자열. 3글자 이상이면 trigram 인덱스로 후보를 좁힌다.
 	private String teamName;
 	private Integer ageGoe; // 나이가 이 값보다 크거나 같음
 	private Integer ageLoe; // 나이가 이 값보다 작거나 같음
+
+	/**
+	 * 캐시 키 등으로 쓰기 위한 사본. 검색 시 무시되는 빈 문자열을 null 로 바꿔서, 같은 쿼리가 나가는 조건은 equals 가 같도록 한다.
+	 * @return 정규화된 검색 조건
+	 */
+	public MemberSearchCondition normalize() {
+		MemberSearchCondition normalized = new MemberSearchCondition();
+		normalized.setUsername(StringUtils.hasText(username) ? username : null);
+		normalized.setUsernameContains(StringUtils.hasText(usernameContains) ? usernameContains : null);
+		normalized.setTeamName(StringUtils.hasText(teamName) ? teamName : null);
+		normalized.setAgeGoe(ageGoe);
+		normalized.setAgeLoe(ageLoe);
+		return normalized;
+	}
 }
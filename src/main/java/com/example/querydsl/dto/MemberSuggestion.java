@@ -0,0 +1,21 @@
+package com.example.querydsl.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 회원명 자동완성 결과 한 건
+ */
+@Getter
+@ToString
+public class MemberSuggestion {
+	private final Long memberId;
+	private final String username;
+	private final int age;
+
+	public MemberSuggestion(Long memberId, String username, int age) {
+		this.memberId = memberId;
+		this.username = username;
+		this.age = age;
+	}
+}
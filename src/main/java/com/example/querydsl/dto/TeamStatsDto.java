@@ -0,0 +1,29 @@
+package com.example.querydsl.dto;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 팀별 회원 나이 통계. 회원이 없는 팀은 포함하지 않는다. (member join team group by team.name 과 같은 결과)
+ */
+@Getter
+@ToString
+public class TeamStatsDto {
+	private final Long teamId;
+	private final String teamName;
+	private final long count;
+	private final long sum;
+	private final double avg;
+	private final int max;
+	private final int min;
+
+	public TeamStatsDto(Long teamId, String teamName, long count, long sum, int max, int min) {
+		this.teamId = teamId;
+		this.teamName = teamName;
+		this.count = count;
+		this.sum = sum;
+		this.avg = (double)sum / count;
+		this.max = max;
+		this.min = min;
+	}
+}
@@ -0,0 +1,25 @@
+package com.example.querydsl.entity;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * 회원/팀 데이터 버전을 저장하는 한 줄짜리 테이블. 데이터를 바꾼 트랜잭션이 커밋 직전에 같이 올린다. (DataVersion)
+ * 데이터와 같은 DB, 같은 트랜잭션에 있으므로 replica 에도 데이터와 함께 복제된다.
+ */
+@Entity
+@Table(name = "data_version")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class DataVersionRow {
+
+	@Id
+	private Long id;
+
+	private long version;
+}
@@ -5,9 +5,13 @@ import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.ForeignKey;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
 
 import org.springframework.util.ObjectUtils;
 
@@ -18,13 +22,19 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 
 @Entity
+@Table(indexes = {
+	@Index(name = "IDX_MEMBER_USERNAME", columnList = "username"), // usernameEq
+	@Index(name = "IDX_MEMBER_AGE_ID", columnList = "age, MEMBER_ID"), // ageGoe/ageLoe, (age, id) keyset
+	@Index(name = "IDX_MEMBER_TEAM_AGE", columnList = "TEAM_ID, age") // teamNameEq 로 찾은 팀의 회원, 팀 + 나이 조건
+})
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "username", "age", "team"})
 public class Member {
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "MEMBER_SEQ_GENERATOR")
+	@SequenceGenerator(name = "MEMBER_SEQ_GENERATOR", sequenceName = "MEMBER_SEQ", allocationSize = 50) // 50개씩 미리 할당 (insert 마다 시퀀스 조회 X)
 	@Column(name = "MEMBER_ID")
 	private Long id;
 
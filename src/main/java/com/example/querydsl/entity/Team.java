@@ -3,11 +3,19 @@ package com.example.querydsl.entity;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import lombok.AccessLevel;
 import lombok.Builder;
@@ -16,13 +24,17 @@ import lombok.NoArgsConstructor;
 import lombok.ToString;
 
 @Entity
+@Table(indexes = @Index(name = "IDX_TEAM_NAME", columnList = "name")) // teamNameEq, findByName
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE) // 거의 바뀌지 않고 member.team 으로 자주 조회되므로 2차 캐시 사용
 @Getter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "name"})
 public class Team {
 
 	@Id
-	@GeneratedValue
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "TEAM_SEQ_GENERATOR")
+	@SequenceGenerator(name = "TEAM_SEQ_GENERATOR", sequenceName = "TEAM_SEQ", allocationSize = 50) // 50개씩 미리 할당 (insert 마다 시퀀스 조회 X)
 	@Column(name = "TEAM_ID")
 	private Long id;
 
@@ -0,0 +1,150 @@
+package com.example.querydsl.event;
+
+import static com.example.querydsl.entity.QDataVersionRow.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.support.SearchCountCache;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 회원/팀 데이터가 바뀔 때마다 올라가는 버전. 검색 응답의 ETag 로 사용한다.
+ * 버전이 같으면 검색 결과도 같으므로 If-None-Match 가 일치하면 쿼리 없이 304 로 응답할 수 있다.
+ *
+ * 버전은 DB(data_version)에 있고 데이터를 바꾼 트랜잭션이 커밋 직전에 같이 올린다.
+ * 그래서 여러 인스턴스가 같은 ETag 를 내려주고, 검색과 같은 트랜잭션에서 버전을 읽으면 (replica 여도) 읽은 데이터의 버전이 된다.
+ * 버전을 먼저 읽고 검색하므로 검색 결과는 항상 그 버전 이후의 데이터다. (이전 데이터를 새 버전으로 응답하지 않는다)
+ *
+ * 다른 인스턴스의 변경은 EntityChangedEvent 로 알 수 없으므로, 읽은 버전이 올라가 있으면 count 캐시를 비운다.
+ *
+ * row 는 스키마를 만들 때 import.sql 로 넣어둔다. (ddl-auto 를 쓰지 않으면 마이그레이션에서 같이 넣어야 한다)
+ * 커밋 경로에서는 update 만 하므로 처음 변경하는 트랜잭션끼리 insert 가 부딪치지 않는다.
+ *
+ * 회원/팀을 바꾸는 모든 트랜잭션이 이 한 row 를 update 하므로, 커밋 직전부터 커밋까지 row lock 을 잡고 차례로 지나간다.
+ * 쓰기가 많아지면 여기가 병목이 되므로 querydsl.data-version.bump(lock 대기 포함) 시간을 보고 판단한다.
+ * 팀별로 버전을 나누면 lock 은 나뉘지만, 검색 결과는 여러 팀에 걸쳐 있어서 ETag 를 만들려면 결국 모든 버전을 읽어야 한다.
+ */
+@Slf4j
+@Component
+public class DataVersion {
+
+	private static final Long ROW_ID = 1L;
+
+	private final EntityManager em;
+	private final JPAQueryFactory queryFactory;
+	private final SearchCountCache searchCountCache;
+	private final TransactionTemplate readOnlyTransaction;
+	private final Timer bumpTimer;
+	private final AtomicLong lastSeen = new AtomicLong();
+	private final Object readKey = new Object(); // 트랜잭션에서 읽은 버전
+	private final Object bumpKey = new Object(); // 트랜잭션에서 버전 증가를 등록했는지
+
+	public DataVersion(EntityManager em, JPAQueryFactory queryFactory, SearchCountCache searchCountCache,
+		PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+		this.em = em;
+		this.queryFactory = queryFactory;
+		this.searchCountCache = searchCountCache;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		this.bumpTimer = Timer.builder("querydsl.data-version.bump")
+			.description("data_version update 시간 (row lock 대기 포함)")
+			.register(meterRegistry);
+	}
+
+	/**
+	 * 버전 조회와 action 을 같은 readOnly 트랜잭션에서 실행한다. action 안의 조회는 이 트랜잭션에 참여해야 한다.
+	 * @param action 현재 버전의 strong ETag 를 받아서 조회
+	 */
+	public <T> T read(Function<String, T> action) {
+		return readOnlyTransaction.execute(status -> action.apply(etag()));
+	}
+
+	/**
+	 * @return 현재 버전의 strong ETag. 쿼리를 실행하기 전에 같은 트랜잭션에서 가져와야 한다.
+	 */
+	public String etag() {
+		return "\"" + current() + "\"";
+	}
+
+	/**
+	 * 트랜잭션 안에서는 처음 읽은 버전을 재사용한다. (ETag 와 single flight 키가 같은 버전을 사용)
+	 */
+	public long current() {
+		Long cached = (Long) TransactionSynchronizationManager.getResource(readKey);
+		if (cached != null) {
+			return cached;
+		}
+
+		Long read = queryFactory.select(dataVersionRow.version)
+			.from(dataVersionRow)
+			.where(dataVersionRow.id.eq(ROW_ID))
+			.fetchOne();
+		long version = read != null ? read : 0L;
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			bindUntilCompletion(readKey, version);
+		}
+
+		long seen = lastSeen.get();
+		if (version > seen && lastSeen.compareAndSet(seen, version)) {
+			searchCountCache.invalidateAll();
+		}
+		return version;
+	}
+
+	/**
+	 * flush 도중이라 쿼리를 바로 실행하지 않고, hibernate 가 마지막 flush 후 커밋 직전에 실행하도록 등록한다.
+	 * 트랜잭션마다 한 번만 올린다. 롤백되면 실행되지 않는다.
+	 */
+	@EventListener
+	public void onEntityChanged(EntityChangedEvent event) {
+		if (!(event.isAbout(Member.class) || event.isAbout(Team.class))
+			|| !TransactionSynchronizationManager.isActualTransactionActive()
+			|| TransactionSynchronizationManager.hasResource(bumpKey)) {
+			return;
+		}
+		bindUntilCompletion(bumpKey, Boolean.TRUE);
+		em.unwrap(SessionImplementor.class).getActionQueue().registerProcess((BeforeTransactionCompletionProcess) this::bump);
+	}
+
+	/**
+	 * row 가 없으면 (import.sql 로 넣지 않은 DB) 버전이 올라가지 않으므로 ETag 가 바뀌지 않는다.
+	 */
+	private void bump(SessionImplementor session) {
+		long updated = bumpTimer.record(() -> new JPAUpdateClause(session, dataVersionRow)
+			.set(dataVersionRow.version, dataVersionRow.version.add(1))
+			.where(dataVersionRow.id.eq(ROW_ID))
+			.execute());
+		if (updated == 0) {
+			log.warn("data_version row(id={}) is missing. ETag will not change until it is inserted.", ROW_ID);
+		}
+	}
+
+	private static void bindUntilCompletion(Object key, Object value) {
+		TransactionSynchronizationManager.bindResource(key, value);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(key);
+			}
+		});
+	}
+}
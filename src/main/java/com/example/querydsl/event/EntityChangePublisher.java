@@ -0,0 +1,53 @@
+package com.example.querydsl.event;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.example.querydsl.event.EntityChangedEvent.Type;
+
+/**
+ * hibernate post insert/update/delete 이벤트를 EntityChangedEvent 로 바꿔서 발행한다.
+ * flush 시점(트랜잭션 커밋 전)에 호출되므로, 커밋 이후에 처리해야 하는 쪽은 @TransactionalEventListener 로 받으면 된다.
+ * flush 도중에 호출되기 때문에 리스너에서 EntityManager 로 쿼리를 날리면 안된다.
+ */
+public class EntityChangePublisher implements PostInsertEventListener, PostUpdateEventListener,
+	PostDeleteEventListener {
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	public EntityChangePublisher(ApplicationEventPublisher eventPublisher) {
+		this.eventPublisher = eventPublisher;
+	}
+
+	@Override
+	public void onPostInsert(PostInsertEvent event) {
+		EntityPersister persister = event.getPersister();
+		eventPublisher.publishEvent(new EntityChangedEvent(Type.INSERT, persister.getMappedClass(),
+			event.getEntity(), event.getId(), persister.getPropertyNames(), event.getState(), null));
+	}
+
+	@Override
+	public void onPostUpdate(PostUpdateEvent event) {
+		EntityPersister persister = event.getPersister();
+		eventPublisher.publishEvent(new EntityChangedEvent(Type.UPDATE, persister.getMappedClass(),
+			event.getEntity(), event.getId(), persister.getPropertyNames(), event.getState(), event.getOldState()));
+	}
+
+	@Override
+	public void onPostDelete(PostDeleteEvent event) {
+		EntityPersister persister = event.getPersister();
+		eventPublisher.publishEvent(new EntityChangedEvent(Type.DELETE, persister.getMappedClass(),
+			event.getEntity(), event.getId(), persister.getPropertyNames(), null, event.getDeletedState()));
+	}
+
+	@Override
+	public boolean requiresPostCommitHanding(EntityPersister persister) {
+		return false;
+	}
+}
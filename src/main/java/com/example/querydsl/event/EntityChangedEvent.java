@@ -0,0 +1,71 @@
+package com.example.querydsl.event;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 엔티티 insert/update/delete 시 발행되는 스프링 이벤트.
+ * 벌크 연산(update/delete 쿼리)은 어떤 row 가 바뀌었는지 모르기 때문에 엔티티 타입만 담은 BULK 이벤트로 발행한다.
+ */
+@Getter
+@ToString(of = {"type", "entityType", "id"})
+public class EntityChangedEvent {
+
+	public enum Type {
+		INSERT, UPDATE, DELETE, BULK
+	}
+
+	private final Type type;
+	private final Class<?> entityType;
+	private final Object entity; // BULK 이면 null
+	private final Serializable id; // BULK 이면 null
+	private final String[] propertyNames;
+	private final Object[] state; // 변경 후 값. DELETE, BULK 이면 null
+	private final Object[] oldState; // 변경 전 값. INSERT, BULK 이면 null. UPDATE 여도 detached 엔티티를 merge 한 경우 null 일 수 있다.
+
+	public EntityChangedEvent(Type type, Class<?> entityType, Object entity, Serializable id,
+		String[] propertyNames, Object[] state, Object[] oldState) {
+		this.type = type;
+		this.entityType = entityType;
+		this.entity = entity;
+		this.id = id;
+		this.propertyNames = propertyNames;
+		this.state = state;
+		this.oldState = oldState;
+	}
+
+	public static EntityChangedEvent bulk(Class<?> entityType) {
+		return new EntityChangedEvent(Type.BULK, entityType, null, null, null, null, null);
+	}
+
+	public boolean isAbout(Class<?> type) {
+		return type.isAssignableFrom(entityType);
+	}
+
+	/**
+	 * @param property 엔티티 필드명
+	 * @return 변경 후 값. state 가 없으면 null
+	 */
+	public Object getValue(String property) {
+		return valueOf(state, property);
+	}
+
+	/**
+	 * @param property 엔티티 필드명
+	 * @return 변경 전 값. oldState 가 없으면 null
+	 */
+	public Object getOldValue(String property) {
+		return valueOf(oldState, property);
+	}
+
+	private Object valueOf(Object[] values, String property) {
+		if (values == null || propertyNames == null) {
+			return null;
+		}
+		int index = Arrays.asList(propertyNames).indexOf(property);
+		return index >= 0 ? values[index] : null;
+	}
+}
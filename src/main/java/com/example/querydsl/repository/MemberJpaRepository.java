@@ -3,31 +3,49 @@ package com.example.querydsl.repository;
 import static com.example.querydsl.entity.QMember.*;
 import static com.example.querydsl.entity.QTeam.*;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManager;
 
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import com.example.querydsl.dto.MemberSearchCondition;
 import com.example.querydsl.dto.MemberTeamDto;
 import com.example.querydsl.dto.QMemberTeamDto;
 import com.example.querydsl.entity.Member;
+import com.example.querydsl.repository.support.QueryShapeCache;
+import com.example.querydsl.search.UsernameTrigramIndex;
+import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 
 @Repository
 public class MemberJpaRepository {
 	private final EntityManager em; // 순수 JPA 사용하려면 entity manager 필요
 	private final JPAQueryFactory queryFactory; // querydsl 사용하려면 필요
+	private final QueryShapeCache queryShapeCache; // 조건 유무 조합별 JPQL 캐시
+	private final int streamFetchSize; // searchStream 에서 DB 에서 한 번에 가져오는 row 수
+	private final UsernameTrigramIndex usernameIndex; // usernameContains 검색 시 후보 id 를 좁히는 인덱스
 
-	public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory) {
+	public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory, QueryShapeCache queryShapeCache,
+		@Value("${querydsl.stream.fetch-size:500}") int streamFetchSize, UsernameTrigramIndex usernameIndex) {
 		this.em = em;
 		// this.queryFactory = new JPAQueryFactory(em); // em이 동시성 문제 없기 때문에 이렇게 사용해도 됨
 		this.queryFactory = queryFactory; // JPAQueryFactoryConfig에서 등록한 JPAQueryFactory bean 사용
+		this.queryShapeCache = queryShapeCache;
+		this.streamFetchSize = streamFetchSize;
+		this.usernameIndex = usernameIndex;
 	}
 
 	public void save(Member member) {
@@ -61,48 +79,105 @@ public class MemberJpaRepository {
 
 	/**
 	 * BooleanBuilder를 가지고 멤버 검색
+	 * 조건 값 대신 Param 으로 builder 를 조립해서, 조건 유무 조합별로 한 번만 JPQL 을 만든다.
 	 * @param condition
 	 * @return
 	 */
+	@Transactional(readOnly = true)
 	public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition) {
-
-		BooleanBuilder builder = new BooleanBuilder();
-		if (StringUtils.hasText(condition.getUsername())) {
-			builder.and(member.username.eq(condition.getUsername()));
+		Set<Long> candidates = usernameCandidates(condition.getUsernameContains());
+		if (candidates != null && candidates.isEmpty()) {
+			return Collections.emptyList();
 		}
+		MemberSearchShape shape = MemberSearchShape.of(condition, candidates);
 
-		if (StringUtils.hasText(condition.getTeamName())) {
-			builder.and(team.name.eq(condition.getTeamName()));
-		}
+		return queryShapeCache.get("MemberJpaRepository.searchByBuilder", shape.key(), () -> {
+			BooleanBuilder builder = new BooleanBuilder();
+			if (shape.hasUsername()) {
+				builder.and(member.username.eq(MemberSearchShape.USERNAME));
+			}
 
-		if (condition.getAgeGoe() != null) {
-			builder.and(member.age.goe(condition.getAgeGoe()));
-		}
+			builder.and(shape.usernameContains());
 
-		if (condition.getAgeLoe() != null) {
-			builder.and(member.age.loe(condition.getAgeLoe()));
-		}
+			if (shape.hasTeamName()) {
+				builder.and(team.name.eq(MemberSearchShape.TEAM_NAME));
+			}
 
-		return queryFactory
-			.select(new QMemberTeamDto(member.id.as("memberId"),
-				member.username,
-				member.age,
-				team.id.as("teamId"),
-				team.name.as("teamName")
-			))
-			.from(member)
-			.leftJoin(member.team, team) // team 정보도 가져와야 하기 때문에 조인을 한다.
-			.where(builder)
-			.fetch();
+			if (shape.hasAgeGoe()) {
+				builder.and(member.age.goe(MemberSearchShape.AGE_GOE));
+			}
+
+			if (shape.hasAgeLoe()) {
+				builder.and(member.age.loe(MemberSearchShape.AGE_LOE));
+			}
+
+			return queryFactory
+				.select(new QMemberTeamDto(member.id.as("memberId"),
+					member.username,
+					member.age,
+					team.id.as("teamId"),
+					team.name.as("teamName")
+				))
+				.from(member)
+				.leftJoin(member.team, team) // team 정보도 가져와야 하기 때문에 조인을 한다.
+				.where(builder);
+		}).fetch(em, shape.getParams());
 	}
 
 	/**
 	 * where 여러 파라미터로 검색
+	 * 조건 유무 조합별로 JPQL 을 캐싱해두고 파라미터만 바인딩해서 실행한다.
 	 * @param condition
 	 * @return
 	 */
+	@Transactional(readOnly = true)
 	public List<MemberTeamDto> search(MemberSearchCondition condition) {
+		Set<Long> candidates = usernameCandidates(condition.getUsernameContains());
+		if (candidates != null && candidates.isEmpty()) {
+			return Collections.emptyList();
+		}
+		MemberSearchShape shape = MemberSearchShape.of(condition, candidates);
 
+		return queryShapeCache.get("MemberJpaRepository.search", shape.key(), () -> queryFactory
+			.select(
+				new QMemberTeamDto(member.id.as("memberId"),
+					member.username,
+					member.age,
+					team.id.as("teamId"),
+					team.name.as("teamName")
+				))
+			.from(member)
+			.leftJoin(member.team, team)
+			.where(
+				shape.usernameEq(),
+				shape.usernameContains(),
+				shape.teamNameEq(),
+				shape.ageGoe(),
+				shape.ageLoe()
+			)
+		).fetch(em, shape.getParams());
+	}
+
+	/**
+	 * search 와 같은 조건으로 조회하지만, 결과를 List 로 모으지 않고 forward-only 커서로 한 건씩 consumer 에 넘긴다.
+	 * DTO 프로젝션이라 영속성 컨텍스트에도 쌓이지 않으므로 결과 건수와 상관없이 메모리 사용량이 일정하다.
+	 * 커서가 열려있는 동안 트랜잭션(커넥션)을 잡고 있으므로 consumer 는 오래 걸리는 작업을 하면 안된다.
+	 * @param condition
+	 * @param consumer
+	 */
+	@Transactional(readOnly = true)
+	public void searchStream(MemberSearchCondition condition, Consumer<MemberTeamDto> consumer) {
+		try (CloseableIterator<MemberTeamDto> iterator = searchQuery(condition)
+			.setHint(QueryHints.FETCH_SIZE, streamFetchSize)
+			.setHint(QueryHints.READ_ONLY, true)
+			.iterate()) { // hibernate 에서는 ScrollableResults(FORWARD_ONLY) 로 동작
+			while (iterator.hasNext()) {
+				consumer.accept(iterator.next());
+			}
+		}
+	}
+
+	private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition) {
 		return queryFactory
 			.select(
 				new QMemberTeamDto(member.id.as("memberId"),
@@ -115,17 +190,41 @@ public class MemberJpaRepository {
 			.leftJoin(member.team, team)
 			.where(
 				usernameEq(condition.getUsername()),
+				usernameContains(condition.getUsernameContains()),
 				teamNameEq(condition.getTeamName()),
 				ageGoe(condition.getAgeGoe()),
 				ageLoe(condition.getAgeLoe())
-			)
-			.fetch();
+			);
 	}
 
 	private BooleanExpression usernameEq(String username) {
 		return StringUtils.hasText(username) ? member.username.eq(username) : null;
 	}
 
+	private BooleanExpression usernameContains(String usernameContains) {
+		if (!StringUtils.hasText(usernameContains)) {
+			return null;
+		}
+		BooleanExpression contains = member.username.contains(usernameContains);
+		Set<Long> candidates = usernameCandidates(usernameContains);
+		return candidates != null ? member.id.in(candidates).and(contains) : contains;
+	}
+
+	/**
+	 * 인덱스는 flush 시점에 갱신되므로, 트랜잭션 안에서 아직 flush 하지 않은 회원도 찾을 수 있도록 먼저 flush 한다.
+	 * @return 후보 id. 인덱스로 좁힐 수 없으면 null
+	 */
+	private Set<Long> usernameCandidates(String usernameContains) {
+		if (!StringUtils.hasText(usernameContains)) {
+			return null;
+		}
+		if (TransactionSynchronizationManager.isActualTransactionActive()
+			&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			em.flush();
+		}
+		return usernameIndex.candidates(usernameContains);
+	}
+
 	private BooleanExpression teamNameEq(String teamName) {
 		return StringUtils.hasText(teamName) ? team.name.eq(teamName) : null;
 	}
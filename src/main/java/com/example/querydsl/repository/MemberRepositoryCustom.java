@@ -1,10 +1,15 @@
 package com.example.querydsl.repository;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import com.example.querydsl.dto.MemberBulkProgress;
+import com.example.querydsl.dto.MemberKeysetCondition;
+import com.example.querydsl.dto.MemberKeysetSlice;
 import com.example.querydsl.dto.MemberSearchCondition;
 import com.example.querydsl.dto.MemberTeamDto;
 
@@ -14,6 +19,13 @@ import com.example.querydsl.dto.MemberTeamDto;
 public interface MemberRepositoryCustom {
 	List<MemberTeamDto> search(MemberSearchCondition condition);
 
+	/**
+	 * search 결과를 List 로 모으지 않고 커서로 한 건씩 consumer 에 넘긴다.
+	 * @param condition
+	 * @param consumer
+	 */
+	void searchStream(MemberSearchCondition condition, Consumer<MemberTeamDto> consumer);
+
 	/**
 	 * contents, count 쿼리 한 번에 요청
 	 * @param condition
@@ -32,4 +44,48 @@ public interface MemberRepositoryCustom {
 	 */
 	Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable);
 
+	/**
+	 * deferred join 페이징. 조건과 offset/limit 으로 id 만 먼저 조회하고, 그 id 들만 team join 해서 DTO 로 조회한다.
+	 * 뒤쪽 페이지일수록 효과가 크다. (앞 페이지의 row 를 join 하고 버리지 않는다)
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
+	Page<MemberTeamDto> searchPageDeferredJoin(MemberSearchCondition condition, Pageable pageable);
+
+	/**
+	 * count 쿼리 없이 pageSize + 1 건을 조회해서 다음 페이지 존재 여부만 판단
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
+	Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable);
+
+	/**
+	 * keyset(seek) 페이징. offset 없이 이전 페이지 마지막 키 다음부터 조회하므로 페이지 깊이와 무관하게 비용이 일정하다.
+	 * count 쿼리는 실행하지 않는다.
+	 * @param condition
+	 * @param keyset
+	 * @return
+	 */
+	MemberKeysetSlice searchKeyset(MemberSearchCondition condition, MemberKeysetCondition keyset);
+
+	/**
+	 * 조건에 맞는 회원의 나이를 delta 만큼 더한다. id 순으로 chunk-size 건씩 나눠서 chunk 마다 트랜잭션 하나로 실행한다.
+	 * chunk 마다 커밋하므로 트랜잭션 밖에서 호출해야 한다. (트랜잭션 안에서 호출하면 IllegalStateException)
+	 * chunk 마다 영속성 컨텍스트를 flush/clear 하므로 호출 전에 조회한 엔티티는 다시 조회해야 한다.
+	 * @param condition
+	 * @param delta
+	 * @param progress chunk 가 끝날 때마다 호출
+	 * @return 변경된 row 수
+	 */
+	long bulkUpdateAge(MemberSearchCondition condition, int delta, Consumer<MemberBulkProgress> progress);
+
+	/**
+	 * 조건에 맞는 회원을 chunk 단위로 삭제한다. bulkUpdateAge 와 같은 방식으로 실행된다.
+	 * @param condition
+	 * @param progress chunk 가 끝날 때마다 호출
+	 * @return 삭제된 row 수
+	 */
+	long bulkDelete(MemberSearchCondition condition, Consumer<MemberBulkProgress> progress);
 }
@@ -3,21 +3,67 @@ package com.example.querydsl.repository;
 import static com.example.querydsl.entity.QMember.*;
 import static com.example.querydsl.entity.QTeam.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
 import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.example.querydsl.dto.InvalidSearchParameterException;
+import com.example.querydsl.dto.MemberBulkProgress;
+import com.example.querydsl.dto.MemberKeysetCondition;
+import com.example.querydsl.dto.MemberKeysetCursor;
+import com.example.querydsl.dto.MemberKeysetSlice;
 import com.example.querydsl.dto.MemberSearchCondition;
 import com.example.querydsl.dto.MemberTeamDto;
 import com.example.querydsl.dto.QMemberTeamDto;
 import com.example.querydsl.entity.Member;
+import com.example.querydsl.event.EntityChangedEvent;
+import com.example.querydsl.repository.support.CompiledQuery;
+import com.example.querydsl.repository.support.FastProjections;
+import com.example.querydsl.repository.support.QueryShapeCache;
+import com.example.querydsl.repository.support.SearchCountCache;
+import com.example.querydsl.search.UsernameTrigramIndex;
+import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.QueryResults;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.JPAExpressions;
 import com.querydsl.jpa.JPQLQuery;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
@@ -27,37 +73,142 @@ import com.querydsl.jpa.impl.JPAQueryFactory;
  */
 public class MemberRepositoryImpl extends QuerydslRepositorySupport implements MemberRepositoryCustom {
 
+	private static final int MAX_KEYSET_SIZE = 1000;
+
+	// QMemberTeamDto 와 같은 생성자 프로젝션이지만 리플렉션 대신 캐싱된 MethodHandle 로 생성한다.
+	private static final FactoryExpression<MemberTeamDto> MEMBER_TEAM_DTO = FastProjections.constructor(
+		MemberTeamDto.class,
+		member.id.as("memberId"),
+		member.username,
+		member.age,
+		team.id.as("teamId"),
+		team.name.as("teamName")
+	);
+
+	// Pageable 정렬에 쓸 수 있는 MemberTeamDto 속성
+	private static final Map<String, ComparableExpressionBase<?>> SORT_PROPERTIES;
+	// 정렬 경로별 대표 속성 이름 (id -> memberId)
+	private static final Map<ComparableExpressionBase<?>, String> SORT_NAMES;
+	// 정렬은 QueryShapeCache 키에 들어가므로 요청에서 받을 수 있는 정렬 수를 제한한다.
+	private static final int MAX_SORT_ORDERS = 3;
+
+	static {
+		Map<String, ComparableExpressionBase<?>> properties = new LinkedHashMap<>();
+		properties.put("memberId", member.id);
+		properties.put("id", member.id);
+		properties.put("username", member.username);
+		properties.put("age", member.age);
+		properties.put("teamId", team.id);
+		properties.put("teamName", team.name);
+		SORT_PROPERTIES = Collections.unmodifiableMap(properties);
+
+		Map<ComparableExpressionBase<?>, String> names = new HashMap<>();
+		properties.forEach((name, path) -> names.putIfAbsent(path, name));
+		SORT_NAMES = Collections.unmodifiableMap(names);
+	}
+
+	// deferred join 에서 페이지의 id 목록
+	@SuppressWarnings("rawtypes")
+	private static final Param<Collection> PAGE_IDS = new Param<>(Collection.class, "pageIds");
+
 	private final JPAQueryFactory jpaQueryFactory;
+	private final SearchCountCache searchCountCache;
+	private final QueryShapeCache queryShapeCache;
+	private final int streamFetchSize;
+	private final TransactionTemplate transactionTemplate;
+	private final ApplicationEventPublisher eventPublisher;
+	private final int bulkChunkSize;
+	private final UsernameTrigramIndex usernameIndex;
+	private final long deferredJoinMinOffset;
 
 	/**
 	 * domainClass에는 내 엔티티 클래스를 적으면 됨.
 	 * @param jpaQueryFactory
+	 * @param searchCountCache
+	 * @param queryShapeCache
+	 * @param streamFetchSize searchStream 에서 DB 에서 한 번에 가져오는 row 수
+	 * @param transactionManager 벌크 update/delete 를 chunk 마다 트랜잭션으로 실행
+	 * @param eventPublisher 벌크 update/delete 후 EntityChangedEvent 발행
+	 * @param bulkChunkSize 벌크 update/delete 를 나눠서 실행할 row 수
+	 * @param usernameIndex usernameContains 검색 시 후보 id 를 좁히는 인덱스
+	 * @param deferredJoinMinOffset searchPageComplex 에서 offset 이 이 값 이상이면 deferred join 으로 조회
 	 */
-	public MemberRepositoryImpl(JPAQueryFactory jpaQueryFactory) {
+	public MemberRepositoryImpl(JPAQueryFactory jpaQueryFactory, SearchCountCache searchCountCache,
+		QueryShapeCache queryShapeCache, @Value("${querydsl.stream.fetch-size:500}") int streamFetchSize,
+		PlatformTransactionManager transactionManager, ApplicationEventPublisher eventPublisher,
+		@Value("${querydsl.bulk.chunk-size:1000}") int bulkChunkSize, UsernameTrigramIndex usernameIndex,
+		@Value("${querydsl.pagination.deferred-join-min-offset:1000}") long deferredJoinMinOffset) {
 		super(Member.class);
 		this.jpaQueryFactory = jpaQueryFactory;
+		this.searchCountCache = searchCountCache;
+		this.queryShapeCache = queryShapeCache;
+		this.streamFetchSize = streamFetchSize;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		// chunk 마다 따로 커밋한다. 호출한 트랜잭션이 있으면 bulkInChunks 에서 거절한다.
+		this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		this.eventPublisher = eventPublisher;
+		this.bulkChunkSize = bulkChunkSize;
+		this.usernameIndex = usernameIndex;
+		this.deferredJoinMinOffset = deferredJoinMinOffset;
 	}
 
+	/**
+	 * 조건 유무 조합별로 JPQL 을 캐싱해두고 파라미터만 바인딩해서 실행한다.
+	 * @param condition
+	 * @return
+	 */
 	@Override
+	@Transactional(readOnly = true)
 	public List<MemberTeamDto> search(MemberSearchCondition condition) {
+		Set<Long> candidates = usernameCandidates(condition.getUsernameContains());
+		if (candidates != null && candidates.isEmpty()) {
+			return Collections.emptyList();
+		}
+		MemberSearchShape shape = MemberSearchShape.of(condition, candidates);
+		return queryShapeCache.get("MemberRepositoryImpl.search", shape.key(), () -> jpaQueryFactory
+			.select(MEMBER_TEAM_DTO)
+			.from(member)
+			.leftJoin(member.team, team)
+			.where(
+				shape.usernameEq(),
+				shape.usernameContains(),
+				shape.teamNameEq(),
+				shape.ageGoe(),
+				shape.ageLoe()
+			)
+		).fetch(getEntityManager(), shape.getParams());
+	}
+
+	/**
+	 * forward-only 커서(ScrollableResults)로 한 건씩 읽는다. 커서가 열려있는 동안 트랜잭션을 유지한다.
+	 * @param condition
+	 * @param consumer
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public void searchStream(MemberSearchCondition condition, Consumer<MemberTeamDto> consumer) {
+		try (CloseableIterator<MemberTeamDto> iterator = searchQuery(condition)
+			.setHint(QueryHints.FETCH_SIZE, streamFetchSize)
+			.setHint(QueryHints.READ_ONLY, true)
+			.iterate()) {
+			while (iterator.hasNext()) {
+				consumer.accept(iterator.next());
+			}
+		}
+	}
 
+	private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition) {
 		return jpaQueryFactory
-			.select(
-				new QMemberTeamDto(member.id.as("memberId"),
-					member.username,
-					member.age,
-					team.id.as("teamId"),
-					team.name.as("teamName")
-				))
+			.select(MEMBER_TEAM_DTO)
 			.from(member)
 			.leftJoin(member.team, team)
 			.where(
 				usernameEq(condition.getUsername()),
+				usernameContains(condition.getUsernameContains()),
 				teamNameEq(condition.getTeamName()),
 				ageGoe(condition.getAgeGoe()),
 				ageLoe(condition.getAgeLoe())
-			)
-			.fetch();
+			);
 	}
 
 	/**
@@ -68,6 +219,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 	 * @return
 	 */
 	@Override
+	@Transactional(readOnly = true)
 	public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
 		QueryResults<MemberTeamDto> results = jpaQueryFactory
 			.select(
@@ -81,6 +233,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 			.leftJoin(member.team, team)
 			.where(
 				usernameEq(condition.getUsername()),
+				usernameContains(condition.getUsernameContains()),
 				teamNameEq(condition.getTeamName()),
 				ageGoe(condition.getAgeGoe()),
 				ageLoe(condition.getAgeLoe())
@@ -102,6 +255,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 	 * @param pageable
 	 * @return
 	 */
+	@Transactional(readOnly = true)
 	public Page<MemberTeamDto> searchPageSimple_QuerydslRepositorySupport(MemberSearchCondition condition,
 		Pageable pageable) {
 
@@ -109,6 +263,7 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 			.leftJoin(member.team, team)
 			.where(
 				usernameEq(condition.getUsername()),
+				usernameContains(condition.getUsernameContains()),
 				teamNameEq(condition.getTeamName()),
 				ageGoe(condition.getAgeGoe()),
 				ageLoe(condition.getAgeLoe())
@@ -132,46 +287,382 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 		return new PageImpl<>(content, pageable, total);
 	}
 
+	/**
+	 * content, count 쿼리 모두 조건 유무 조합별로 JPQL 을 캐싱한다.
+	 * offset 이 querydsl.pagination.deferred-join-min-offset 이상이면 searchPageDeferredJoin 으로 조회한다.
+	 * pageable 의 정렬 뒤에 id 순을 붙여서 페이지가 바뀌어도 순서가 같게 한다. (정렬이 없으면 id 순)
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
 	@Override
+	@Transactional(readOnly = true)
 	public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+		if (pageable.getOffset() >= deferredJoinMinOffset) {
+			return searchPageDeferredJoin(condition, pageable);
+		}
+
+		Set<Long> candidates = usernameCandidates(condition.getUsernameContains());
+		if (candidates != null && candidates.isEmpty()) {
+			return new PageImpl<>(Collections.emptyList(), pageable, 0);
+		}
+		MemberSearchShape shape = MemberSearchShape.of(condition, candidates);
+		Sort sort = normalizeSort(pageable.getSort());
+		OrderSpecifier<?>[] orders = orderBy(sort);
+
+		List<MemberTeamDto> results = queryShapeCache.get("MemberRepositoryImpl.searchPageComplex",
+			sortedKey(shape, sort),
+			() -> jpaQueryFactory
+				.select(MEMBER_TEAM_DTO)
+				.from(member)
+				.leftJoin(member.team, team)
+				.where(
+					shape.usernameEq(),
+					shape.usernameContains(),
+					shape.teamNameEq(),
+					shape.ageGoe(),
+					shape.ageLoe()
+				)
+				.orderBy(orders)
+		).fetch(getEntityManager(), shape.getParams(), pageable.getOffset(), pageable.getPageSize());
+
+		return PageableExecutionUtils.getPage(results, pageable, searchPageComplexCount(condition, shape));
+	}
+
+	/**
+	 * deferred join 페이징. 조건, 정렬(pageable 정렬 + id 순), offset/limit 은 id 만 조회하는 쿼리에 적용하고,
+	 * team join 과 DTO 프로젝션은 그 페이지의 id 들에만 적용한 후 id 쿼리 순서대로 돌려준다.
+	 * offset 이 크면 버려질 row 까지 join 해서 읽지 않고 인덱스에서 id 만 건너뛴다.
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Page<MemberTeamDto> searchPageDeferredJoin(MemberSearchCondition condition, Pageable pageable) {
+		Set<Long> candidates = usernameCandidates(condition.getUsernameContains());
+		if (candidates != null && candidates.isEmpty()) {
+			return new PageImpl<>(Collections.emptyList(), pageable, 0);
+		}
+		MemberSearchShape shape = MemberSearchShape.of(condition, candidates);
+		Sort sort = normalizeSort(pageable.getSort());
+		OrderSpecifier<?>[] orders = orderBy(sort);
+
+		// 팀 이름 조건이나 팀 정렬이 없으면 id 쿼리에서는 team join 도 필요없다.
+		// (member.team 은 many-to-one 이라 left join 해도 row 수가 같다)
+		List<Long> ids = queryShapeCache.get("MemberRepositoryImpl.searchPageDeferredJoin.ids",
+			sortedKey(shape, sort), () -> {
+			JPAQuery<Long> idQuery = jpaQueryFactory.select(member.id).from(member);
+			if (shape.hasTeamName() || sortsByTeam(sort)) {
+				idQuery.leftJoin(member.team, team);
+			}
+			return idQuery
+				.where(
+					shape.usernameEq(),
+					shape.usernameContains(),
+					shape.teamNameEq(),
+					shape.ageGoe(),
+					shape.ageLoe()
+				)
+				.orderBy(orders);
+		}).fetch(getEntityManager(), shape.getParams(), pageable.getOffset(), pageable.getPageSize());
+
+		List<MemberTeamDto> results = Collections.emptyList();
+		if (!ids.isEmpty()) {
+			List<MemberTeamDto> rows = queryShapeCache.get("MemberRepositoryImpl.searchPageDeferredJoin.content",
+				() -> jpaQueryFactory
+					.select(MEMBER_TEAM_DTO)
+					.from(member)
+					.leftJoin(member.team, team)
+					.where(Expressions.booleanOperation(Ops.IN, member.id, PAGE_IDS))
+			).fetch(getEntityManager(), Collections.<ParamExpression<?>, Object>singletonMap(PAGE_IDS, ids));
+			results = orderByIds(ids, rows);
+		}
+
+		return PageableExecutionUtils.getPage(results, pageable, searchPageComplexCount(condition, shape));
+	}
+
+	/**
+	 * total 은 페이지와 상관없으므로 검색 조건별로 캐싱한다.
+	 */
+	private LongSupplier searchPageComplexCount(MemberSearchCondition condition, MemberSearchShape shape) {
+		CompiledQuery<Member> countQuery = queryShapeCache.get("MemberRepositoryImpl.searchPageComplex.count",
+			shape.key(),
+			() -> jpaQueryFactory
+				.select(member)
+				.from(member)
+				.leftJoin(member.team, team)
+				.where(
+					shape.usernameEq(),
+					shape.usernameContains(),
+					shape.teamNameEq(),
+					shape.ageGoe(),
+					shape.ageLoe()
+				)
+		);
+
+		Object countKey = SearchCountCache.key("MemberRepositoryImpl.searchPageComplex", condition.normalize());
+		return () -> searchCountCache.get(countKey, () -> countQuery.fetchCount(getEntityManager(), shape.getParams()));
+	}
+
+	/**
+	 * 정렬마다 JPQL 이 다르므로 조건 모양과 정렬을 같이 키로 사용한다. sort 는 normalizeSort 를 거친 값이어야 한다.
+	 */
+	private static Object sortedKey(MemberSearchShape shape, Sort sort) {
+		return Arrays.asList(shape.key(), sort);
+	}
+
+	/**
+	 * in 절 조회 결과를 ids 순서로 정렬한다. 그 사이에 삭제된 회원은 빠진다.
+	 */
+	private static List<MemberTeamDto> orderByIds(List<Long> ids, List<MemberTeamDto> rows) {
+		Map<Long, MemberTeamDto> byId = new HashMap<>();
+		for (MemberTeamDto row : rows) {
+			byId.put(row.getMemberId(), row);
+		}
+		List<MemberTeamDto> ordered = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			MemberTeamDto row = byId.get(id);
+			if (row != null) {
+				ordered.add(row);
+			}
+		}
+		return ordered;
+	}
+
+	/**
+	 * count 쿼리를 실행하지 않는 페이징. pageSize + 1 건을 조회해서 다음 페이지 존재 여부를 판단한다.
+	 * pageable 의 정렬 뒤에 id 순을 붙여서 같은 값끼리도 페이지 간 순서가 바뀌지 않게 한다.
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<MemberTeamDto> searchSlice(MemberSearchCondition condition, Pageable pageable) {
+		List<MemberTeamDto> results = searchQuery(condition)
+			.orderBy(orderBy(normalizeSort(pageable.getSort())))
+			.offset(pageable.getOffset())
+			.limit(pageable.getPageSize() + 1)
+			.fetch();
+
+		boolean hasNext = results.size() > pageable.getPageSize();
+		List<MemberTeamDto> content = hasNext ? new ArrayList<>(results.subList(0, pageable.getPageSize())) : results;
+
+		return new SliceImpl<>(content, pageable, hasNext);
+	}
+
+	/**
+	 * keyset 페이징. size + 1 건을 조회해서 다음 페이지 존재 여부를 판단한다.
+	 * (age, id) 또는 id 인덱스를 타면 몇 번째 페이지든 앞의 row 를 읽고 버리지 않는다.
+	 * @param condition
+	 * @param keyset
+	 * @return
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public MemberKeysetSlice searchKeyset(MemberSearchCondition condition, MemberKeysetCondition keyset) {
+		boolean orderByAge = keyset.isOrderByAge();
+		MemberKeysetCursor cursor = MemberKeysetCursor.decode(keyset.getCursor(), orderByAge);
+		int size = Math.max(1, Math.min(keyset.getSize(), MAX_KEYSET_SIZE));
+
 		List<MemberTeamDto> results = jpaQueryFactory
-			.select(
-				new QMemberTeamDto(member.id.as("memberId"),
-					member.username,
-					member.age,
-					team.id.as("teamId"),
-					team.name.as("teamName")
-				))
+			.select(MEMBER_TEAM_DTO)
 			.from(member)
 			.leftJoin(member.team, team)
 			.where(
 				usernameEq(condition.getUsername()),
+				usernameContains(condition.getUsernameContains()),
 				teamNameEq(condition.getTeamName()),
 				ageGoe(condition.getAgeGoe()),
-				ageLoe(condition.getAgeLoe())
+				ageLoe(condition.getAgeLoe()),
+				keysetAfter(cursor)
 			)
-			.offset(pageable.getOffset())
-			.limit(pageable.getPageSize())
+			.orderBy(keysetOrder(orderByAge))
+			.limit(size + 1)
 			.fetch();
 
-		JPAQuery<Member> countQuery = jpaQueryFactory
-			.select(member)
-			.from(member)
-			.leftJoin(member.team, team)
-			.where(
-				usernameEq(condition.getUsername()),
-				teamNameEq(condition.getTeamName()),
-				ageGoe(condition.getAgeGoe()),
-				ageLoe(condition.getAgeLoe())
-			);
+		boolean hasNext = results.size() > size;
+		List<MemberTeamDto> content = hasNext ? new ArrayList<>(results.subList(0, size)) : results;
+		String nextCursor = hasNext ? MemberKeysetCursor.of(content.get(size - 1), orderByAge).encode() : null;
+
+		return new MemberKeysetSlice(content, hasNext, nextCursor);
+	}
+
+	@Override
+	public long bulkUpdateAge(MemberSearchCondition condition, int delta, Consumer<MemberBulkProgress> progress) {
+		return bulkInChunks(condition, progress, (from, to) -> jpaQueryFactory
+			.update(member)
+			.set(member.age, member.age.add(delta))
+			.where(bulkCondition(condition), member.id.gt(from), member.id.loe(to))
+			.execute());
+	}
+
+	@Override
+	public long bulkDelete(MemberSearchCondition condition, Consumer<MemberBulkProgress> progress) {
+		return bulkInChunks(condition, progress, (from, to) -> jpaQueryFactory
+			.delete(member)
+			.where(bulkCondition(condition), member.id.gt(from), member.id.loe(to))
+			.execute());
+	}
+
+	/**
+	 * id 순으로 다음 chunk 의 마지막 id 를 찾고, (이전 chunk 마지막 id, 이번 chunk 마지막 id] 범위만 update/delete 한다.
+	 * 범위가 작아서 락을 짧게 잡고, 범위 밖의 row 는 건드리지 않는다.
+	 * 벌크 쿼리는 영속성 컨텍스트를 거치지 않으므로 chunk 마다 flush/clear 하고 EntityChangedEvent(BULK) 를 발행한다.
+	 *
+	 * chunk 는 각각 새 트랜잭션(REQUIRES_NEW)에서 커밋한다. 호출한 쪽의 트랜잭션에 참여하면 전체가 트랜잭션 하나가 되어
+	 * 락을 끝까지 잡고 있게 되고, 반대로 호출한 트랜잭션을 잠시 멈추고 새로 시작하면 호출한 쪽이 잡은 락을 chunk 가 기다리거나
+	 * 아직 flush 하지 않은 변경을 보지 못한다. 그래서 트랜잭션 안에서 호출하면 IllegalStateException 으로 거절한다.
+	 */
+	private long bulkInChunks(MemberSearchCondition condition, Consumer<MemberBulkProgress> progress,
+		BiFunction<Long, Long, Long> bulkQuery) {
+		Assert.state(!TransactionSynchronizationManager.isActualTransactionActive(),
+			"bulk update/delete must be called outside of a transaction. each chunk commits on its own");
+		long affectedRows = 0;
+		long lastId = 0L; // 시퀀스 id 는 1부터 시작
+		int chunk = 0;
 
-		return PageableExecutionUtils.getPage(results, pageable, countQuery::fetchCount);
+		while (true) {
+			long from = lastId;
+			Long[] result = transactionTemplate.execute(status -> {
+				getEntityManager().flush(); // 벌크 쿼리 전에 쓰기 지연된 변경 반영
+				List<Long> ids = jpaQueryFactory
+					.select(member.id)
+					.from(member)
+					.where(bulkCondition(condition), member.id.gt(from))
+					.orderBy(member.id.asc())
+					.limit(bulkChunkSize)
+					.fetch();
+				if (ids.isEmpty()) {
+					return null;
+				}
+
+				Long to = ids.get(ids.size() - 1);
+				long affected = bulkQuery.apply(from, to);
+				getEntityManager().clear(); // DB 와 달라진 엔티티 제거
+				eventPublisher.publishEvent(EntityChangedEvent.bulk(Member.class));
+				return new Long[] {to, affected};
+			});
+			if (result == null) {
+				return affectedRows;
+			}
+
+			lastId = result[0];
+			affectedRows += result[1];
+			progress.accept(new MemberBulkProgress(++chunk, affectedRows, lastId));
+		}
+	}
+
+	/**
+	 * update/delete 쿼리는 join 을 쓸 수 없으므로 팀 이름 조건은 서브쿼리로 바꾼다.
+	 */
+	private Predicate bulkCondition(MemberSearchCondition condition) {
+		return ExpressionUtils.allOf(
+			usernameEq(condition.getUsername()),
+			usernameContains(condition.getUsernameContains()),
+			StringUtils.hasText(condition.getTeamName())
+				? member.team.id.in(JPAExpressions.select(team.id).from(team).where(team.name.eq(condition.getTeamName())))
+				: null,
+			ageGoe(condition.getAgeGoe()),
+			ageLoe(condition.getAgeLoe())
+		);
+	}
+
+	/**
+	 * 요청의 정렬을 같은 JPQL 이면 같은 값이 되도록 정리한다.
+	 * 속성 이름은 대표 이름으로 바꾸고(id -> memberId), 같은 속성은 처음 것만 남기고, ignoreCase 는 버린다. (orderBy 에서 쓰지 않음)
+	 * @throws InvalidSearchParameterException 지원하지 않는 속성이거나 정렬이 MAX_SORT_ORDERS 개보다 많으면
+	 */
+	private static Sort normalizeSort(Sort sort) {
+		Map<ComparableExpressionBase<?>, Sort.Order> orders = new LinkedHashMap<>();
+		for (Sort.Order order : sort) {
+			ComparableExpressionBase<?> path = SORT_PROPERTIES.get(order.getProperty());
+			if (path == null) {
+				throw new InvalidSearchParameterException("unsupported sort property: " + order.getProperty());
+			}
+			orders.putIfAbsent(path,
+				new Sort.Order(order.getDirection(), SORT_NAMES.get(path), order.getNullHandling()));
+		}
+		if (orders.size() > MAX_SORT_ORDERS) {
+			throw new InvalidSearchParameterException("too many sort properties: max " + MAX_SORT_ORDERS);
+		}
+		return Sort.by(new ArrayList<>(orders.values()));
+	}
+
+	/**
+	 * Pageable 정렬을 OrderSpecifier 로 바꾸고 마지막에 id 순을 붙인다. (id 로 정렬했으면 붙이지 않음)
+	 * 정렬 값이 같은 row 끼리 순서가 정해지지 않으면 offset 페이징에서 row 가 중복되거나 빠진다.
+	 * @param sort MemberTeamDto 의 속성 이름 (memberId, username, age, teamId, teamName)
+	 */
+	private static OrderSpecifier<?>[] orderBy(Sort sort) {
+		List<OrderSpecifier<?>> orders = new ArrayList<>();
+		boolean orderedById = false;
+		for (Sort.Order order : sort) {
+			ComparableExpressionBase<?> path = SORT_PROPERTIES.get(order.getProperty());
+			if (path == null) {
+				throw new InvalidSearchParameterException("unsupported sort property: " + order.getProperty());
+			}
+			OrderSpecifier<?> specifier = order.isAscending() ? path.asc() : path.desc();
+			if (order.getNullHandling() == Sort.NullHandling.NULLS_FIRST) {
+				specifier = specifier.nullsFirst();
+			} else if (order.getNullHandling() == Sort.NullHandling.NULLS_LAST) {
+				specifier = specifier.nullsLast();
+			}
+			orders.add(specifier);
+			orderedById |= path == member.id;
+		}
+		if (!orderedById) {
+			orders.add(member.id.asc());
+		}
+		return orders.toArray(new OrderSpecifier<?>[0]);
+	}
+
+	/**
+	 * @return team 속성(teamId, teamName)으로 정렬하면 true
+	 */
+	private static boolean sortsByTeam(Sort sort) {
+		for (Sort.Order order : sort) {
+			ComparableExpressionBase<?> path = SORT_PROPERTIES.get(order.getProperty());
+			if (path instanceof Path && ((Path<?>) path).getRoot() == team) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	private BooleanExpression usernameEq(String username) {
 		return StringUtils.hasText(username) ? member.username.eq(username) : null;
 	}
 
+	/**
+	 * trigram 인덱스로 후보 id 를 좁힐 수 있으면 id in (후보) and like, 아니면 like 만 사용한다.
+	 * 후보가 없으면 JPQLSerializer 가 id in () 을 1 = 2 로 바꾼다.
+	 */
+	private BooleanExpression usernameContains(String usernameContains) {
+		if (!StringUtils.hasText(usernameContains)) {
+			return null;
+		}
+		BooleanExpression contains = member.username.contains(usernameContains);
+		Set<Long> candidates = usernameCandidates(usernameContains);
+		return candidates != null ? member.id.in(candidates).and(contains) : contains;
+	}
+
+	/**
+	 * 인덱스는 flush 시점에 갱신되므로, 트랜잭션 안에서 아직 flush 하지 않은 회원도 찾을 수 있도록 먼저 flush 한다.
+	 * @return 후보 id. 인덱스로 좁힐 수 없으면 null
+	 */
+	private Set<Long> usernameCandidates(String usernameContains) {
+		if (!StringUtils.hasText(usernameContains)) {
+			return null;
+		}
+		if (TransactionSynchronizationManager.isActualTransactionActive()
+			&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			getEntityManager().flush();
+		}
+		return usernameIndex.candidates(usernameContains);
+	}
+
 	private BooleanExpression teamNameEq(String teamName) {
 		return StringUtils.hasText(teamName) ? team.name.eq(teamName) : null;
 	}
@@ -184,4 +675,25 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 		return ageGoe != null ? member.age.goe(ageGoe) : null;
 	}
 
+	/**
+	 * 나이순이면 (age, id) > (lastAge, lastMemberId), 아니면 id > lastMemberId
+	 * or 만 있으면 인덱스 범위 조회를 못하므로 age >= lastAge 를 앞에 붙여서 (age, id) 인덱스를 타게 한다.
+	 */
+	private BooleanExpression keysetAfter(MemberKeysetCursor cursor) {
+		if (cursor == null) {
+			return null;
+		}
+		if (cursor.getLastAge() == null) {
+			return member.id.gt(cursor.getLastMemberId());
+		}
+		return member.age.goe(cursor.getLastAge())
+			.and(member.age.gt(cursor.getLastAge()).or(member.id.gt(cursor.getLastMemberId())));
+	}
+
+	private OrderSpecifier<?>[] keysetOrder(boolean orderByAge) {
+		return orderByAge
+			? new OrderSpecifier<?>[] {member.age.asc(), member.id.asc()}
+			: new OrderSpecifier<?>[] {member.id.asc()};
+	}
+
 }
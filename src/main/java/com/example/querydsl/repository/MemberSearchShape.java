@@ -0,0 +1,141 @@
+package com.example.querydsl.repository;
+
+import static com.example.querydsl.entity.QMember.*;
+import static com.example.querydsl.entity.QTeam.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.util.StringUtils;
+
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.Param;
+
+/**
+ * MemberSearchCondition 의 쿼리 모양(어떤 조건이 있는지)과 바인딩할 파라미터 값.
+ * 조건식을 값 대신 Param 으로 만들기 때문에, 모양이 같으면 QueryShapeCache 에서 같은 JPQL 을 재사용한다.
+ */
+final class MemberSearchShape {
+
+	static final Param<String> USERNAME = new Param<>(String.class, "username");
+	static final Param<String> USERNAME_CONTAINS = new Param<>(String.class, "usernameContains");
+	@SuppressWarnings("rawtypes")
+	static final Param<Collection> CANDIDATE_IDS = new Param<>(Collection.class, "candidateIds");
+	static final Param<String> TEAM_NAME = new Param<>(String.class, "teamName");
+	static final Param<Integer> AGE_GOE = new Param<>(Integer.class, "ageGoe");
+	static final Param<Integer> AGE_LOE = new Param<>(Integer.class, "ageLoe");
+
+	private final Map<ParamExpression<?>, Object> params = new HashMap<>();
+
+	private MemberSearchShape() {
+	}
+
+	static MemberSearchShape of(MemberSearchCondition condition) {
+		return of(condition, null);
+	}
+
+	/**
+	 * @param condition
+	 * @param candidateIds usernameContains 를 만족할 수 있는 member id (UsernameTrigramIndex). null 이면 like 만 사용
+	 * @return
+	 */
+	static MemberSearchShape of(MemberSearchCondition condition, Collection<Long> candidateIds) {
+		MemberSearchShape shape = new MemberSearchShape();
+		if (StringUtils.hasText(condition.getUsername())) {
+			shape.params.put(USERNAME, condition.getUsername());
+		}
+		if (StringUtils.hasText(condition.getUsernameContains())) {
+			shape.params.put(USERNAME_CONTAINS, escapeLike(condition.getUsernameContains()));
+			if (candidateIds != null) {
+				shape.params.put(CANDIDATE_IDS, candidateIds);
+			}
+		}
+		if (StringUtils.hasText(condition.getTeamName())) {
+			shape.params.put(TEAM_NAME, condition.getTeamName());
+		}
+		if (condition.getAgeGoe() != null) {
+			shape.params.put(AGE_GOE, condition.getAgeGoe());
+		}
+		if (condition.getAgeLoe() != null) {
+			shape.params.put(AGE_LOE, condition.getAgeLoe());
+		}
+		return shape;
+	}
+
+	/**
+	 * @return QueryShapeCache 키. 쿼리 이름은 QueryShapeCache 에 따로 넘긴다.
+	 */
+	Object key() {
+		return Arrays.asList(hasUsername(), hasUsernameContains(), hasCandidateIds(), hasTeamName(),
+			hasAgeGoe(), hasAgeLoe());
+	}
+
+	Map<ParamExpression<?>, Object> getParams() {
+		return params;
+	}
+
+	boolean hasUsername() {
+		return params.containsKey(USERNAME);
+	}
+
+	boolean hasUsernameContains() {
+		return params.containsKey(USERNAME_CONTAINS);
+	}
+
+	boolean hasCandidateIds() {
+		return params.containsKey(CANDIDATE_IDS);
+	}
+
+	boolean hasTeamName() {
+		return params.containsKey(TEAM_NAME);
+	}
+
+	boolean hasAgeGoe() {
+		return params.containsKey(AGE_GOE);
+	}
+
+	boolean hasAgeLoe() {
+		return params.containsKey(AGE_LOE);
+	}
+
+	BooleanExpression usernameEq() {
+		return hasUsername() ? member.username.eq(USERNAME) : null;
+	}
+
+	/**
+	 * 후보 id 가 있으면 id in (후보) 로 범위를 좁히고, 후보는 trigram 만 보고 고른 것이므로 like 로 다시 확인한다.
+	 */
+	BooleanExpression usernameContains() {
+		if (!hasUsernameContains()) {
+			return null;
+		}
+		// 파라미터 값은 escapeLike 로 이스케이프해서 넣는다.
+		BooleanExpression contains = member.username.contains(USERNAME_CONTAINS);
+		return hasCandidateIds() ? Expressions.booleanOperation(Ops.IN, member.id, CANDIDATE_IDS).and(contains) : contains;
+	}
+
+	BooleanExpression teamNameEq() {
+		return hasTeamName() ? team.name.eq(TEAM_NAME) : null;
+	}
+
+	BooleanExpression ageGoe() {
+		return hasAgeGoe() ? member.age.goe(AGE_GOE) : null;
+	}
+
+	BooleanExpression ageLoe() {
+		return hasAgeLoe() ? member.age.loe(AGE_LOE) : null;
+	}
+
+	/**
+	 * contains 는 like concat('%', ?, '%') escape '!' 로 직렬화되므로 파라미터의 %, _, ! 를 직접 이스케이프한다.
+	 */
+	private static String escapeLike(String value) {
+		return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+	}
+}
@@ -3,17 +3,29 @@ package com.example.querydsl.repository;
 import static com.example.querydsl.entity.QMember.*;
 import static com.example.querydsl.entity.QTeam.*;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.MemberTeamDto;
+import com.example.querydsl.dto.QMemberTeamDto;
 import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
 import com.example.querydsl.repository.support.Querydsl4RepositorySupport;
+import com.example.querydsl.search.UsernameTrigramIndex;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 
@@ -21,12 +33,20 @@ import com.querydsl.jpa.impl.JPAQuery;
  * Querydsl4RepositorySupport 사용하는 방법 예시 코드.
  */
 @Repository
+@Transactional(readOnly = true) // 조회만 하므로 라우팅 사용 시 replica 로
 public class MemberTestRepository extends Querydsl4RepositorySupport {
 
+	private UsernameTrigramIndex usernameIndex; // usernameContains 검색 시 후보 id 를 좁히는 인덱스
+
 	public MemberTestRepository() {
 		super(Member.class);
 	}
 
+	@Autowired
+	public void setUsernameIndex(UsernameTrigramIndex usernameIndex) {
+		this.usernameIndex = usernameIndex;
+	}
+
 	public List<Member> basicSelect() {
 		// Querydsl4RepositorySupport의 select를 사용하기 때문에 jpaQueryFactory 없이 바로 select부터 사용 가능.
 		return select(member).from(member).fetch();
@@ -48,6 +68,7 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
 			.leftJoin(member.team, team)
 			.where(
 				usernameEq(condition.getUsername()),
+				usernameContains(condition.getUsernameContains()),
 				teamNameEq(condition.getTeamName()),
 				ageGoe(condition.getAgeGoe()),
 				ageLoe(condition.getAgeLoe())
@@ -59,17 +80,18 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
 
 	/**
 	 * Querydsl4RepositorySupport 를 사용하여 페이지네이션.
-	 * 위의 searchPageByApplyPage와 동일한 코드이다.
+	 * 위의 searchPageByApplyPage와 동일한 코드이다. count 는 검색 조건별로 캐싱된다.
 	 * @param condition
 	 * @param pageable
 	 * @return
 	 */
 	public Page<Member> applyPagination(MemberSearchCondition condition, Pageable pageable) {
-		return applyPagination(pageable, queryFactory -> queryFactory
+		return applyPagination(pageable, "applyPagination", condition.normalize(), queryFactory -> queryFactory
 			.selectFrom(member)
 			.leftJoin(member.team, team)
 			.where(
 				usernameEq(condition.getUsername()),
+				usernameContains(condition.getUsernameContains()),
 				teamNameEq(condition.getTeamName()),
 				ageGoe(condition.getAgeGoe()),
 				ageLoe(condition.getAgeLoe())
@@ -77,20 +99,112 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
 		);
 	}
 
+	/**
+	 * applyPagination 결과의 member.team 을 in 쿼리로 한 번에 로딩.
+	 * 화면에서 member.team 을 접근해도 회원마다 team select 가 나가지 않는다.
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
+	public Page<Member> applyPaginationWithTeam(MemberSearchCondition condition, Pageable pageable) {
+		Page<Member> page = applyPagination(condition, pageable);
+		batchLoad(page.getContent(), Member::getTeam, Team.class, 100);
+		return page;
+	}
+
+	/**
+	 * deferred join 페이징. id 만 조건, 정렬, offset/limit 으로 조회하고, 그 id 들만 team 을 fetch join 해서 조회한다.
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
+	public Page<Member> applyDeferredJoinPagination(MemberSearchCondition condition, Pageable pageable) {
+		return applyDeferredJoinPagination(pageable,
+			query -> query
+				.select(member.id)
+				.from(member)
+				.leftJoin(member.team, team)
+				.where(
+					usernameEq(condition.getUsername()),
+					usernameContains(condition.getUsernameContains()),
+					teamNameEq(condition.getTeamName()),
+					ageGoe(condition.getAgeGoe()),
+					ageLoe(condition.getAgeLoe())
+				),
+			(query, ids) -> query
+				.selectFrom(member)
+				.leftJoin(member.team, team).fetchJoin()
+				.where(member.id.in(ids)),
+			Member::getId);
+	}
+
+	/**
+	 * 조건에 맞는 회원 전체를 id 순으로 chunkSize 건씩 나눠서 consumer 에 넘긴다. (배치 작업용)
+	 * findAll() 처럼 전체를 메모리에 올리지 않는다.
+	 * @param condition
+	 * @param chunkSize
+	 * @param consumer
+	 */
+	public void forEachMemberChunk(MemberSearchCondition condition, int chunkSize,
+		Consumer<List<MemberTeamDto>> consumer) {
+		forEachChunk(member.id, queryFactory -> queryFactory
+				.select(new QMemberTeamDto(
+					member.id.as("memberId"),
+					member.username,
+					member.age,
+					team.id.as("teamId"),
+					team.name.as("teamName")
+				))
+				.from(member)
+				.leftJoin(member.team, team)
+				.where(
+					usernameEq(condition.getUsername()),
+					usernameContains(condition.getUsernameContains()),
+					teamNameEq(condition.getTeamName()),
+					ageGoe(condition.getAgeGoe()),
+					ageLoe(condition.getAgeLoe())
+				),
+			MemberTeamDto::getMemberId, chunkSize, consumer);
+	}
+
+	/**
+	 * 조건에 맞는 회원 엔티티를 id 순으로 chunkSize 건씩 나눠서 consumer 에 넘긴다. (배치 수정용)
+	 * consumer 에서 변경한 내용은 chunk 마다 flush 된다.
+	 * @param condition
+	 * @param chunkSize
+	 * @param consumer
+	 */
+	@Transactional
+	public void updateEachMemberChunk(MemberSearchCondition condition, int chunkSize, Consumer<List<Member>> consumer) {
+		forEachChunk(member.id, queryFactory -> queryFactory
+				.selectFrom(member)
+				.leftJoin(member.team, team)
+				.where(
+					usernameEq(condition.getUsername()),
+					usernameContains(condition.getUsernameContains()),
+					teamNameEq(condition.getTeamName()),
+					ageGoe(condition.getAgeGoe()),
+					ageLoe(condition.getAgeLoe())
+				),
+			Member::getId, chunkSize, consumer);
+	}
+
 	/**
 	 * contents 조회 쿼리와 count 조회 쿼리를 분리하여 사용
+	 * count 는 검색 조건별로 캐싱되고, 캐시에 없으면 content 쿼리와 동시에 실행할 수 있다. (querydsl.concurrent-count.enabled)
 	 * @param condition
 	 * @param pageable
 	 * @return
 	 */
 	public Page<Member> applyPagination2(MemberSearchCondition condition, Pageable pageable) {
-		return applyPagination(pageable,
+		return applyPagination(pageable, "applyPagination2", condition.normalize(),
 			// contents 용 쿼리
 			contentsQueryFactory -> contentsQueryFactory
 				.selectFrom(member)
 				.leftJoin(member.team, team)
 				.where(
 					usernameEq(condition.getUsername()),
+					usernameContains(condition.getUsernameContains()),
 					teamNameEq(condition.getTeamName()),
 					ageGoe(condition.getAgeGoe()),
 					ageLoe(condition.getAgeLoe())
@@ -101,6 +215,7 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
 				.from(member)
 				.where(
 					usernameEq(condition.getUsername()),
+					usernameContains(condition.getUsernameContains()),
 					teamNameEq(condition.getTeamName()),
 					ageGoe(condition.getAgeGoe()),
 					ageLoe(condition.getAgeLoe())
@@ -108,10 +223,95 @@ public class MemberTestRepository extends Querydsl4RepositorySupport {
 		);
 	}
 
+	/**
+	 * count 쿼리 없이 Slice 로 조회
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
+	public Slice<Member> applySlicing(MemberSearchCondition condition, Pageable pageable) {
+		return applySlicing(pageable, queryFactory -> queryFactory
+			.selectFrom(member)
+			.leftJoin(member.team, team)
+			.where(
+				usernameEq(condition.getUsername()),
+				usernameContains(condition.getUsernameContains()),
+				teamNameEq(condition.getTeamName()),
+				ageGoe(condition.getAgeGoe()),
+				ageLoe(condition.getAgeLoe())
+			)
+		);
+	}
+
+	/**
+	 * applyPagination2 와 같은 쿼리를 조건 유무 조합(shape)별로 JPQL 캐싱해서 실행.
+	 * 조건 값 대신 Param 으로 쿼리를 만들고, 값은 실행할 때 바인딩한다.
+	 * @param condition
+	 * @param pageable
+	 * @return
+	 */
+	public Page<Member> applyPaginationByShape(MemberSearchCondition condition, Pageable pageable) {
+		Set<Long> candidates = usernameCandidates(condition.getUsernameContains());
+		if (candidates != null && candidates.isEmpty()) {
+			return new PageImpl<>(Collections.emptyList(), pageable, 0);
+		}
+		MemberSearchShape shape = MemberSearchShape.of(condition, candidates);
+		return applyPaginationByShape(pageable, "applyPaginationByShape", shape.key(),
+			// contents 용 쿼리
+			contentsQueryFactory -> contentsQueryFactory
+				.selectFrom(member)
+				.leftJoin(member.team, team)
+				.where(
+					shape.usernameEq(),
+					shape.usernameContains(),
+					shape.teamNameEq(),
+					shape.ageGoe(),
+					shape.ageLoe()
+				),
+			// count 용 쿼리
+			countQueryFactory -> countQueryFactory
+				.select(member.id)
+				.from(member)
+				.leftJoin(member.team, team)
+				.where(
+					shape.usernameEq(),
+					shape.usernameContains(),
+					shape.teamNameEq(),
+					shape.ageGoe(),
+					shape.ageLoe()
+				),
+			shape.getParams()
+		);
+	}
+
 	private BooleanExpression usernameEq(String username) {
 		return StringUtils.hasText(username) ? member.username.eq(username) : null;
 	}
 
+	private BooleanExpression usernameContains(String usernameContains) {
+		if (!StringUtils.hasText(usernameContains)) {
+			return null;
+		}
+		BooleanExpression contains = member.username.contains(usernameContains);
+		Set<Long> candidates = usernameCandidates(usernameContains);
+		return candidates != null ? member.id.in(candidates).and(contains) : contains;
+	}
+
+	/**
+	 * 인덱스는 flush 시점에 갱신되므로, 트랜잭션 안에서 아직 flush 하지 않은 회원도 찾을 수 있도록 먼저 flush 한다.
+	 * @return 후보 id. 인덱스로 좁힐 수 없으면 null
+	 */
+	private Set<Long> usernameCandidates(String usernameContains) {
+		if (!StringUtils.hasText(usernameContains)) {
+			return null;
+		}
+		if (TransactionSynchronizationManager.isActualTransactionActive()
+			&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+			getEntityManager().flush();
+		}
+		return usernameIndex.candidates(usernameContains);
+	}
+
 	private BooleanExpression teamNameEq(String teamName) {
 		return StringUtils.hasText(teamName) ? team.name.eq(teamName) : null;
 	}
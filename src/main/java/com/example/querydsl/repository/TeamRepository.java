@@ -0,0 +1,23 @@
+package com.example.querydsl.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.QueryHint;
+
+import org.hibernate.annotations.QueryHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.querydsl.entity.Team;
+
+public interface TeamRepository extends JpaRepository<Team, Long> {
+
+	// select t from Team t where t.name = :name
+	// 쿼리 캐시에는 id 만 저장되고 Team 은 2차 캐시에서 가져온다. team 테이블이 변경되면 무효화된다.
+	@org.springframework.data.jpa.repository.QueryHints(@QueryHint(name = QueryHints.CACHEABLE, value = "true"))
+	Optional<Team> findByName(String name);
+
+	// select t from Team t where t.name in :names
+	List<Team> findByNameIn(Collection<String> names);
+}
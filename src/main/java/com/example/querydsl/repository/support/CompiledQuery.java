@@ -0,0 +1,118 @@
+package com.example.querydsl.repository.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.springframework.util.Assert;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAUtil;
+
+/**
+ * querydsl 쿼리를 JPQL 문자열로 한 번만 직렬화해두고, 실행할 때는 파라미터 값만 바인딩한다.
+ * template 쿼리는 조건 값 대신 Param 을 사용해야 같은 모양(shape)의 요청끼리 재사용할 수 있다.
+ * offset/limit 은 JPQL 에 포함되지 않으므로 실행할 때 넘긴다.
+ *
+ * @see QueryShapeCache
+ */
+public class CompiledQuery<T> {
+
+	private final QueryMetadata metadata;
+	private final FactoryExpression<T> projection; // DTO 프로젝션이 아니면 null
+	private final Jpql content;
+	private volatile Jpql count; // count 쿼리는 필요할 때 직렬화
+	private final QueryMetrics queryMetrics;
+	private final String queryName; // QueryMetrics 의 query 태그
+
+	@SuppressWarnings("unchecked")
+	CompiledQuery(JPAQuery<T> template, EntityManager em, QueryMetrics queryMetrics, String queryName) {
+		this.metadata = template.getMetadata();
+		this.queryMetrics = queryMetrics;
+		this.queryName = queryName;
+		Assert.isTrue(!metadata.getModifiers().isRestricting(), "template query must not have offset/limit");
+
+		Expression<?> select = metadata.getProjection();
+		this.projection = select instanceof FactoryExpression ? (FactoryExpression<T>) select : null;
+		this.content = Jpql.serialize(metadata, false, em);
+	}
+
+	public List<T> fetch(EntityManager em, Map<ParamExpression<?>, Object> params) {
+		return fetch(em, params, null, null);
+	}
+
+	/**
+	 * @param em
+	 * @param params template 의 Param 에 바인딩할 값
+	 * @param offset null 이면 적용 안함
+	 * @param limit null 이면 적용 안함
+	 * @return
+	 */
+	public List<T> fetch(EntityManager em, Map<ParamExpression<?>, Object> params, Long offset, Integer limit) {
+		return queryMetrics.recordContent(queryName, () -> doFetch(em, params, offset, limit));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<T> doFetch(EntityManager em, Map<ParamExpression<?>, Object> params, Long offset, Integer limit) {
+		Query query = content.createQuery(em, params);
+		if (offset != null) {
+			query.setFirstResult(Math.toIntExact(offset));
+		}
+		if (limit != null) {
+			query.setMaxResults(limit);
+		}
+
+		List<?> rows = query.getResultList();
+		if (projection == null) {
+			return (List<T>) rows;
+		}
+
+		boolean multiColumn = projection.getArgs().size() > 1;
+		List<T> results = new ArrayList<>(rows.size());
+		for (Object row : rows) {
+			results.add(projection.newInstance(multiColumn ? (Object[]) row : new Object[] {row}));
+		}
+		return results;
+	}
+
+	public long fetchCount(EntityManager em, Map<ParamExpression<?>, Object> params) {
+		if (count == null) {
+			count = Jpql.serialize(metadata, true, em);
+		}
+		Jpql countJpql = count;
+		return queryMetrics.recordCount(queryName,
+			() -> ((Number) countJpql.createQuery(em, params).getSingleResult()).longValue());
+	}
+
+	private static class Jpql {
+		private final String queryString;
+		private final Map<Object, String> constantToLabel;
+
+		private Jpql(String queryString, Map<Object, String> constantToLabel) {
+			this.queryString = queryString;
+			this.constantToLabel = constantToLabel;
+		}
+
+		private static Jpql serialize(QueryMetadata metadata, boolean forCountRow, EntityManager em) {
+			JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+			serializer.serialize(metadata, forCountRow, null);
+			return new Jpql(serializer.toString(), new HashMap<>(serializer.getConstantToLabel()));
+		}
+
+		private Query createQuery(EntityManager em, Map<ParamExpression<?>, Object> params) {
+			Query query = em.createQuery(queryString);
+			JPAUtil.setConstants(query, constantToLabel, params);
+			return query;
+		}
+	}
+}
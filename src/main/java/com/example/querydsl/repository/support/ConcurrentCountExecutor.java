@@ -0,0 +1,163 @@
+package com.example.querydsl.repository.support;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.datasource.ReplicaRoutingDataSource;
+import com.example.querydsl.sql.StatementScope;
+import com.querydsl.jpa.impl.JPAQuery;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 페이징 count 쿼리를 content 쿼리와 동시에 실행한다. (querydsl.concurrent-count.enabled=true 일 때만)
+ *
+ * - count 쿼리는 count 스레드의 읽기 전용 트랜잭션(= 별도 EntityManager, 별도 커넥션)에서 실행한다.
+ *   트랜잭션 매니저로 시작하므로 라우팅을 사용하면 요청 스레드의 content 쿼리와 같은 곳(replica 또는 forcePrimary 면 primary)으로 간다.
+ * - 호출한 쪽이 쓰기 트랜잭션 안에 있으면 커밋 전 변경 내용을 다른 커넥션에서 볼 수 없으므로 같은 스레드에서 순서대로 실행한다.
+ * - 스레드/큐가 꽉 찼거나, timeout 이 지났거나, 실패하면 요청 스레드에서 다시 count 한다.
+ * - 기다리지 않게 된 count 는 interrupt 하지 않는다. (커넥션을 쓰는 도중에 interrupt 하면 커넥션이 깨질 수 있다)
+ *   대신 count 트랜잭션에 timeout 을 걸어서 DB 에서 쿼리가 취소되도록 한다.
+ * 커넥션을 요청당 두 개 쓰게 되므로 pool-size 는 커넥션 풀 크기보다 충분히 작게 잡아야 한다.
+ */
+@Slf4j
+@Component
+public class ConcurrentCountExecutor {
+
+	private final boolean enabled;
+	private final long timeoutMillis;
+	private final EntityManager entityManager; // count 스레드의 트랜잭션에 묶인 EntityManager 로 연결된다.
+	private final TransactionTemplate readOnlyTransaction;
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong concurrentCount = new AtomicLong();
+
+	public ConcurrentCountExecutor(EntityManager entityManager, PlatformTransactionManager transactionManager,
+		@Value("${querydsl.concurrent-count.enabled:false}") boolean enabled,
+		@Value("${querydsl.concurrent-count.pool-size:4}") int poolSize,
+		@Value("${querydsl.concurrent-count.queue-capacity:50}") int queueCapacity,
+		@Value("${querydsl.concurrent-count.timeout:3s}") Duration timeout) {
+		this.entityManager = entityManager;
+		this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+		this.readOnlyTransaction.setReadOnly(true);
+		this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		// 트랜잭션 timeout 은 초 단위라 올림한다. 쿼리마다 javax.persistence.query.timeout 으로 적용된다.
+		this.readOnlyTransaction.setTimeout((int) Math.max(1, (timeout.toMillis() + 999) / 1000));
+		this.enabled = enabled;
+		this.timeoutMillis = timeout.toMillis();
+		// 밀리면 거절하고 요청 스레드에서 실행한다.
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("concurrent-count-"),
+			new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * count 쿼리를 다른 스레드에서 시작한다. 동시 실행할 수 없으면 getAsLong() 을 호출할 때 그 자리에서 실행한다.
+	 * 결과를 쓰지 않게 되면 cancel() 을 호출해야 한다.
+	 * @param countQuery 요청 스레드의 EntityManager 로 만든 count 쿼리. 다른 스레드에서는 clone 해서 사용한다.
+	 * @return count
+	 */
+	public PendingCount submit(JPAQuery<?> countQuery) {
+		if (!enabled || isInWriteTransaction()) {
+			return new PendingCount(countQuery, null);
+		}
+		try {
+			String method = QueryMetrics.currentMethod();
+			boolean replicaRead = ReplicaRoutingDataSource.isReplicaRead(); // 요청 스레드의 content 쿼리와 같은 곳에서 count
+			// count 쿼리도 요청의 StatementScope 에 기록되도록 이어준다.
+			return new PendingCount(countQuery, executor.submit(StatementScope.propagate(() -> {
+				String previous = QueryMetrics.enterMethod(method); // 메트릭이 요청한 리포지토리 메서드로 기록되도록
+				try {
+					long count = replicaRead ? fetchCountReadOnly(countQuery)
+						: ReplicaRoutingDataSource.forcePrimary(() -> fetchCountReadOnly(countQuery));
+					concurrentCount.incrementAndGet();
+					return count;
+				} finally {
+					QueryMetrics.enterMethod(previous);
+				}
+			})));
+		} catch (RejectedExecutionException e) {
+			log.debug("concurrent count rejected. fallback to serial count");
+			return new PendingCount(countQuery, null);
+		}
+	}
+
+	private boolean isInWriteTransaction() {
+		return TransactionSynchronizationManager.isActualTransactionActive()
+			&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+	}
+
+	/**
+	 * 읽기 전용 트랜잭션이라 hibernate 세션도 read-only, FlushMode.MANUAL 로 열린다.
+	 */
+	private long fetchCountReadOnly(JPAQuery<?> countQuery) {
+		return readOnlyTransaction.execute(status -> countQuery.clone(entityManager).fetchCount());
+	}
+
+	/**
+	 * @return concurrent-count 스레드에서 실행을 마친 count 쿼리 수
+	 */
+	public long getConcurrentCount() {
+		return concurrentCount.get();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	public class PendingCount implements LongSupplier {
+		private final JPAQuery<?> countQuery;
+		private final Future<Long> future;
+
+		private PendingCount(JPAQuery<?> countQuery, Future<Long> future) {
+			this.countQuery = countQuery;
+			this.future = future;
+		}
+
+		@Override
+		public long getAsLong() {
+			if (future == null) {
+				return countQuery.fetchCount();
+			}
+			try {
+				return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				log.warn("concurrent count timed out after {}ms. fallback to serial count", timeoutMillis);
+			} catch (ExecutionException e) {
+				log.warn("concurrent count failed. fallback to serial count", e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			future.cancel(false);
+			return countQuery.fetchCount();
+		}
+
+		/**
+		 * 마지막 페이지라서 count 가 필요없는 경우 등. 이미 끝났으면 아무것도 하지 않는다.
+		 */
+		public void cancel() {
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+}
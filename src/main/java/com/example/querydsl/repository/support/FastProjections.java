@@ -0,0 +1,305 @@
+package com.example.querydsl.repository.support;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.FactoryExpressionBase;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Visitor;
+
+/**
+ * Projections.constructor / Projections.fields 대신 사용하는 DTO 프로젝션.
+ * DTO 타입(과 인자 타입, 필드 이름)별로 MethodHandle 을 한 번만 만들어 캐싱하고, row 마다 리플렉션 없이 호출한다.
+ *
+ * - constructor: 인자 타입이 맞는 생성자를 MethodHandle 로 호출. (Projections.constructor, @QueryProjection 대체)
+ * - fields: 기본 생성자는 LambdaMetafactory 로 만든 Supplier, 값은 setter 가 있으면 setter, 없으면 필드에 MethodHandle 로 넣는다.
+ *   이름은 path 이름 또는 as() 별칭을 사용한다. (Projections.bean, Projections.fields 대체)
+ *
+ * 기본형 파라미터에 null 이 오면 0/false 로 넣는다.
+ */
+public final class FastProjections {
+
+	private static final ConcurrentMap<List<Object>, RowFactory<?>> FACTORIES = new ConcurrentHashMap<>();
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private FastProjections() {
+	}
+
+	public static <T> FactoryExpression<T> constructor(Class<T> type, Expression<?>... args) {
+		List<Class<?>> argTypes = new ArrayList<>(args.length);
+		for (Expression<?> arg : args) {
+			argTypes.add(arg.getType());
+		}
+		RowFactory<T> factory = factory(Arrays.asList("constructor", type, argTypes),
+			() -> ConstructorRowFactory.create(type, argTypes));
+		return new MethodHandleProjection<>(type, Arrays.asList(args), factory);
+	}
+
+	public static <T> FactoryExpression<T> fields(Class<T> type, Expression<?>... args) {
+		List<String> names = new ArrayList<>(args.length);
+		for (Expression<?> arg : args) {
+			names.add(nameOf(arg));
+		}
+		RowFactory<T> factory = factory(Arrays.asList("fields", type, names),
+			() -> FieldsRowFactory.create(type, names));
+		return new MethodHandleProjection<>(type, Arrays.asList(args), factory);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> RowFactory<T> factory(List<Object> key, Supplier<RowFactory<T>> creator) {
+		RowFactory<?> factory = FACTORIES.get(key);
+		if (factory == null) {
+			factory = FACTORIES.computeIfAbsent(key, k -> creator.get());
+		}
+		return (RowFactory<T>) factory;
+	}
+
+	private static String nameOf(Expression<?> expr) {
+		if (expr instanceof Path) {
+			return ((Path<?>) expr).getMetadata().getName();
+		}
+		if (expr instanceof Operation && ((Operation<?>) expr).getOperator() == Ops.ALIAS) {
+			return ((Path<?>) ((Operation<?>) expr).getArg(1)).getMetadata().getName();
+		}
+		throw new IllegalArgumentException("fields projection needs a path or alias (as) expression: " + expr);
+	}
+
+	private static Object[] primitiveDefaults(Class<?>[] parameterTypes) {
+		Object[] defaults = new Object[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (parameterTypes[i].isPrimitive()) {
+				defaults[i] = Array.get(Array.newInstance(parameterTypes[i], 1), 0); // 0, false 등 기본값
+			}
+		}
+		return defaults;
+	}
+
+	private interface RowFactory<T> {
+		T newInstance(Object[] args);
+	}
+
+	private static final class ConstructorRowFactory<T> implements RowFactory<T> {
+		private final MethodHandle constructor; // (Object[])Object
+		private final Object[] primitiveDefaults;
+
+		private ConstructorRowFactory(MethodHandle constructor, Object[] primitiveDefaults) {
+			this.constructor = constructor;
+			this.primitiveDefaults = primitiveDefaults;
+		}
+
+		private static <T> ConstructorRowFactory<T> create(Class<T> type, List<Class<?>> argTypes) {
+			Constructor<?> constructor = findConstructor(type, argTypes);
+			try {
+				MethodHandle handle = LOOKUP.unreflectConstructor(constructor)
+					.asSpreader(Object[].class, argTypes.size())
+					.asType(MethodType.methodType(Object.class, Object[].class));
+				return new ConstructorRowFactory<>(handle, primitiveDefaults(constructor.getParameterTypes()));
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("constructor is not accessible: " + constructor, e);
+			}
+		}
+
+		private static Constructor<?> findConstructor(Class<?> type, List<Class<?>> argTypes) {
+			for (Constructor<?> constructor : type.getConstructors()) {
+				Class<?>[] parameterTypes = constructor.getParameterTypes();
+				if (parameterTypes.length != argTypes.size()) {
+					continue;
+				}
+				boolean matches = true;
+				for (int i = 0; i < parameterTypes.length && matches; i++) {
+					matches = ClassUtils.isAssignable(ClassUtils.resolvePrimitiveIfNecessary(parameterTypes[i]),
+						argTypes.get(i));
+				}
+				if (matches) {
+					return constructor;
+				}
+			}
+			throw new IllegalArgumentException("no public constructor of " + type.getName() + " for " + argTypes);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T newInstance(Object[] args) {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i] == null && primitiveDefaults[i] != null) {
+					args[i] = primitiveDefaults[i];
+				}
+			}
+			try {
+				return (T) (Object) constructor.invokeExact(args);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private static final class FieldsRowFactory<T> implements RowFactory<T> {
+		private final Supplier<T> instantiator;
+		private final MethodHandle[] setters; // (Object, Object)void
+		private final Object[] primitiveDefaults;
+
+		private FieldsRowFactory(Supplier<T> instantiator, MethodHandle[] setters, Object[] primitiveDefaults) {
+			this.instantiator = instantiator;
+			this.setters = setters;
+			this.primitiveDefaults = primitiveDefaults;
+		}
+
+		private static <T> FieldsRowFactory<T> create(Class<T> type, List<String> names) {
+			MethodHandle[] setters = new MethodHandle[names.size()];
+			Class<?>[] valueTypes = new Class<?>[names.size()];
+			for (int i = 0; i < names.size(); i++) {
+				Field field = ReflectionUtils.findField(type, names.get(i));
+				if (field == null || Modifier.isStatic(field.getModifiers())) {
+					throw new IllegalArgumentException("no field " + names.get(i) + " in " + type.getName());
+				}
+				valueTypes[i] = field.getType();
+				setters[i] = setter(type, field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+			}
+			return new FieldsRowFactory<>(instantiator(type), setters, primitiveDefaults(valueTypes));
+		}
+
+		/**
+		 * setter 메서드가 있으면 setter, 없으면 필드에 직접 넣는다.
+		 */
+		private static MethodHandle setter(Class<?> type, Field field) {
+			try {
+				Method setter = ReflectionUtils.findMethod(type, "set" + StringUtils.capitalize(field.getName()),
+					field.getType());
+				if (setter != null && Modifier.isPublic(setter.getModifiers())) {
+					return LOOKUP.unreflect(setter);
+				}
+				ReflectionUtils.makeAccessible(field);
+				return LOOKUP.unreflectSetter(field);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("field is not accessible: " + field, e);
+			}
+		}
+
+		/**
+		 * 기본 생성자를 직접 호출하는 Supplier 를 만든다. 만들 수 없으면 MethodHandle 로 호출한다.
+		 */
+		@SuppressWarnings("unchecked")
+		private static <T> Supplier<T> instantiator(Class<T> type) {
+			Constructor<T> noArgs;
+			MethodHandle constructor;
+			try {
+				noArgs = type.getDeclaredConstructor();
+				ReflectionUtils.makeAccessible(noArgs);
+				constructor = LOOKUP.unreflectConstructor(noArgs);
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new IllegalArgumentException("fields projection needs a no-args constructor: " + type.getName(), e);
+			}
+
+			try {
+				// 람다 클래스가 생성자를 직접 호출하므로 public 생성자만 가능
+				if (!Modifier.isPublic(type.getModifiers()) || !Modifier.isPublic(noArgs.getModifiers())) {
+					throw new IllegalAccessException("not public: " + noArgs);
+				}
+				CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class),
+					MethodType.methodType(Object.class), constructor, MethodType.methodType(type));
+				return (Supplier<T>) site.getTarget().invokeExact();
+			} catch (Throwable e) {
+				MethodHandle generic = constructor.asType(MethodType.methodType(Object.class));
+				return () -> {
+					try {
+						return (T) (Object) generic.invokeExact();
+					} catch (RuntimeException | Error ex) {
+						throw ex;
+					} catch (Throwable ex) {
+						throw new IllegalStateException(ex);
+					}
+				};
+			}
+		}
+
+		@Override
+		public T newInstance(Object[] args) {
+			T instance = instantiator.get();
+			try {
+				for (int i = 0; i < setters.length; i++) {
+					Object value = args[i];
+					if (value == null) {
+						if (primitiveDefaults[i] == null) {
+							continue;
+						}
+						value = primitiveDefaults[i];
+					}
+					setters[i].invokeExact((Object) instance, value);
+				}
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException(e);
+			}
+			return instance;
+		}
+	}
+
+	private static final class MethodHandleProjection<T> extends FactoryExpressionBase<T> {
+		private final List<Expression<?>> args;
+		private final RowFactory<T> factory;
+
+		private MethodHandleProjection(Class<T> type, List<Expression<?>> args, RowFactory<T> factory) {
+			super(type);
+			this.args = Collections.unmodifiableList(args);
+			this.factory = factory;
+		}
+
+		@Override
+		public List<Expression<?>> getArgs() {
+			return args;
+		}
+
+		@Override
+		public T newInstance(Object... args) {
+			return factory.newInstance(args);
+		}
+
+		@Override
+		public <R, C> R accept(Visitor<R, C> v, C context) {
+			return v.visit(this, context);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			}
+			if (!(obj instanceof MethodHandleProjection)) {
+				return false;
+			}
+			MethodHandleProjection<?> other = (MethodHandleProjection<?>) obj;
+			return getType().equals(other.getType()) && args.equals(other.args);
+		}
+
+		@Override
+		public int hashCode() {
+			return getType().hashCode() * 31 + args.hashCode();
+		}
+	}
+}
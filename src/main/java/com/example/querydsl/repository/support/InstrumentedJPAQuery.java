@@ -0,0 +1,68 @@
+package com.example.querydsl.repository.support;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.QueryModifiers;
+import com.querydsl.core.QueryResults;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+
+/**
+ * fetch/fetchOne/fetchCount/fetchResults 실행 시간과 row 수를 QueryMetrics 에 기록한다.
+ * select() 는 같은 인스턴스를 돌려주므로 select 이후에도 기록된다. iterate() 는 기록하지 않는다.
+ */
+public class InstrumentedJPAQuery<T> extends JPAQuery<T> {
+
+	private final QueryMetrics queryMetrics;
+
+	public InstrumentedJPAQuery(EntityManager em, QueryMetrics queryMetrics) {
+		super(em, JPAProvider.getTemplates(em));
+		this.queryMetrics = queryMetrics;
+	}
+
+	public InstrumentedJPAQuery(EntityManager em, JPQLTemplates templates, QueryMetadata metadata,
+		QueryMetrics queryMetrics) {
+		super(em, templates, metadata);
+		this.queryMetrics = queryMetrics;
+	}
+
+	@Override
+	public List<T> fetch() {
+		return queryMetrics.recordContent(QueryMetrics.NONE, super::fetch);
+	}
+
+	@Override
+	public T fetchOne() {
+		return queryMetrics.recordOne(QueryMetrics.NONE, super::fetchOne);
+	}
+
+	@Override
+	public long fetchCount() {
+		return queryMetrics.recordCount(QueryMetrics.NONE, super::fetchCount);
+	}
+
+	/**
+	 * content 와 count 를 따로 기록하기 위해 super 와 같은 순서로 fetchCount, fetch 를 실행한다.
+	 */
+	@Override
+	public QueryResults<T> fetchResults() {
+		long total = fetchCount();
+		if (total == 0) {
+			return QueryResults.emptyResults();
+		}
+		QueryModifiers modifiers = getMetadata().getModifiers();
+		return new QueryResults<>(fetch(), modifiers, total);
+	}
+
+	@Override
+	public JPAQuery<T> clone(EntityManager entityManager, JPQLTemplates templates) {
+		InstrumentedJPAQuery<T> query = new InstrumentedJPAQuery<>(entityManager, templates,
+			getMetadata().clone(), queryMetrics);
+		query.clone(this);
+		return query;
+	}
+}
@@ -0,0 +1,27 @@
+package com.example.querydsl.repository.support;
+
+import javax.persistence.EntityManager;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+/**
+ * select/selectFrom/from 으로 만든 쿼리의 실행 시간과 row 수를 QueryMetrics 에 기록하는 JPAQueryFactory.
+ * update/delete 는 기록하지 않는다.
+ */
+public class InstrumentedJPAQueryFactory extends JPAQueryFactory {
+
+	private final EntityManager entityManager;
+	private final QueryMetrics queryMetrics;
+
+	public InstrumentedJPAQueryFactory(EntityManager entityManager, QueryMetrics queryMetrics) {
+		super(entityManager);
+		this.entityManager = entityManager;
+		this.queryMetrics = queryMetrics;
+	}
+
+	@Override
+	public JPAQuery<?> query() {
+		return new InstrumentedJPAQuery<Void>(entityManager, queryMetrics);
+	}
+}
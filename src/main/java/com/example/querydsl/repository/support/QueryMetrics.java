@@ -0,0 +1,94 @@
+package com.example.querydsl.repository.support;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * querydsl 쿼리 실행 시간(querydsl.query)과 조회한 row 수(querydsl.query.rows) 기록.
+ *
+ * - method: 쿼리를 실행한 리포지토리 메서드. QueryMetricsAspect 가 설정하고, 리포지토리 밖에서 실행하면 none.
+ * - type: content(목록/단건 조회) 또는 count
+ * - query: QueryShapeCache 로 실행한 쿼리면 쿼리 이름, 아니면 none
+ *   조건 유무 조합이나 정렬은 태그에 넣지 않는다. (percentiles-histogram 이 켜져 있어서 태그 조합마다 bucket 이 생긴다)
+ *
+ * 확인은 /actuator/metrics/querydsl.query?tag=method:MemberRepositoryImpl.searchPageComplex 처럼 조회한다.
+ */
+@Component
+public class QueryMetrics {
+
+	public static final String NONE = "none";
+
+	private static final ThreadLocal<String> CURRENT_METHOD = new ThreadLocal<>();
+
+	private final MeterRegistry meterRegistry;
+
+	public QueryMetrics(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * @param method 리포지토리 메서드 이름. null 이면 해제
+	 * @return 이전 값. 메서드가 끝나면 다시 설정해야 한다.
+	 */
+	static String enterMethod(String method) {
+		String previous = CURRENT_METHOD.get();
+		if (method == null) {
+			CURRENT_METHOD.remove();
+		} else {
+			CURRENT_METHOD.set(method);
+		}
+		return previous;
+	}
+
+	public <T> List<T> recordContent(String queryName, Supplier<List<T>> query) {
+		String method = currentMethod();
+		List<T> results = timer(method, "content", queryName).record(query);
+		rows(method, queryName).record(results.size());
+		return results;
+	}
+
+	public <T> T recordOne(String queryName, Supplier<T> query) {
+		String method = currentMethod();
+		T result = timer(method, "content", queryName).record(query);
+		rows(method, queryName).record(result == null ? 0 : 1);
+		return result;
+	}
+
+	public long recordCount(String queryName, LongSupplier query) {
+		Timer.Sample sample = Timer.start(meterRegistry);
+		try {
+			return query.getAsLong();
+		} finally {
+			sample.stop(timer(currentMethod(), "count", queryName));
+		}
+	}
+
+	static String currentMethod() {
+		String method = CURRENT_METHOD.get();
+		return method != null ? method : NONE;
+	}
+
+	private Timer timer(String method, String type, String queryName) {
+		return Timer.builder("querydsl.query")
+			.description("querydsl query execution time")
+			.tag("method", method)
+			.tag("type", type)
+			.tag("query", queryName)
+			.register(meterRegistry);
+	}
+
+	private DistributionSummary rows(String method, String queryName) {
+		return DistributionSummary.builder("querydsl.query.rows")
+			.description("rows hydrated by querydsl content query")
+			.tag("method", method)
+			.tag("query", queryName)
+			.register(meterRegistry);
+	}
+}
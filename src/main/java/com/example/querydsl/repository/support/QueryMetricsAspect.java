@@ -0,0 +1,27 @@
+package com.example.querydsl.repository.support;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * 리포지토리 메서드 안에서 실행한 쿼리에 method 태그(클래스명.메서드명)를 붙이기 위해 현재 메서드를 기록한다.
+ * 리포지토리 메서드가 다른 리포지토리 메서드를 호출하면 안쪽 메서드로 기록되고, 끝나면 바깥 메서드로 돌아간다.
+ */
+@Aspect
+@Component
+public class QueryMetricsAspect {
+
+	@Around("execution(public * com.example.querydsl.repository.*.*(..))")
+	public Object tagRepositoryMethod(ProceedingJoinPoint joinPoint) throws Throwable {
+		String method = joinPoint.getSignature().getDeclaringType().getSimpleName()
+			+ "." + joinPoint.getSignature().getName();
+		String previous = QueryMetrics.enterMethod(method);
+		try {
+			return joinPoint.proceed();
+		} finally {
+			QueryMetrics.enterMethod(previous);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.example.querydsl.repository.support;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.querydsl.jpa.impl.JPAQuery;
+
+/**
+ * 쿼리 모양(shape)별 CompiledQuery 캐시.
+ * 동적 쿼리라도 조건 유무의 조합(ex. MemberSearchCondition 의 조건 4개 -> 16가지)만큼만 JPQL 이 생기므로,
+ * 모양별로 querydsl 표현식 생성과 JPQL 직렬화를 한 번만 하고 이후에는 파라미터만 바인딩해서 실행한다.
+ * 정렬처럼 요청에 따라 종류가 많아질 수 있는 값도 키에 들어가므로, maximum-size 를 넘으면 자주 쓰지 않는 모양부터 제거한다. (caffeine)
+ */
+@Component
+public class QueryShapeCache {
+
+	private final Cache<Object, CompiledQuery<?>> cache;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	private final EntityManager entityManager;
+	private final QueryMetrics queryMetrics;
+
+	public QueryShapeCache(EntityManager entityManager, QueryMetrics queryMetrics,
+		@Value("${querydsl.shape-cache.maximum-size:1000}") int maximumSize) {
+		this.entityManager = entityManager;
+		this.queryMetrics = queryMetrics;
+		this.cache = Caffeine.newBuilder()
+			.maximumSize(maximumSize) // sort 처럼 요청마다 달라질 수 있는 값이 키에 들어가도 무한히 커지지 않도록 제한
+			.build();
+	}
+
+	/**
+	 * 조건에 따라 모양이 바뀌지 않는 쿼리.
+	 */
+	public <T> CompiledQuery<T> get(String queryName, Supplier<JPAQuery<T>> template) {
+		return get(queryName, Collections.emptyList(), template);
+	}
+
+	/**
+	 * @param queryName 쿼리 이름. QueryMetrics 의 query 태그로도 사용한다.
+	 * @param shapeKey 조건 유무 조합처럼, 같은 쿼리에서 같은 JPQL 이 나오는 요청이면 equals 가 같은 값. 메트릭 태그에는 넣지 않는다.
+	 * @param template 캐시에 없을 때만 호출된다. 조건 값 대신 Param 을 사용해야 한다.
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> CompiledQuery<T> get(String queryName, Object shapeKey, Supplier<JPAQuery<T>> template) {
+		Object cacheKey = Arrays.asList(queryName, shapeKey);
+		CompiledQuery<?> compiled = cache.getIfPresent(cacheKey);
+		if (compiled != null) {
+			hits.increment();
+			return (CompiledQuery<T>) compiled;
+		}
+
+		misses.increment();
+		return (CompiledQuery<T>) cache.get(cacheKey,
+			key -> new CompiledQuery<>(template.get(), entityManager, queryMetrics, queryName));
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long size() {
+		return cache.estimatedSize();
+	}
+}
@@ -1,24 +1,43 @@
 package com.example.querydsl.repository.support;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.EntityType;
 
+import org.hibernate.annotations.QueryHints;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
 import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
 import org.springframework.data.jpa.repository.support.Querydsl;
 import org.springframework.data.querydsl.SimpleEntityPathResolver;
 import org.springframework.data.repository.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
 import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.core.types.dsl.PathBuilder;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
@@ -35,6 +54,9 @@ public abstract class Querydsl4RepositorySupport {
 	private Querydsl querydsl;
 	private EntityManager entityManager;
 	private JPAQueryFactory queryFactory;
+	private SearchCountCache searchCountCache;
+	private QueryShapeCache queryShapeCache;
+	private ConcurrentCountExecutor concurrentCountExecutor;
 
 	public Querydsl4RepositorySupport(Class<?> domainClass) {
 		Assert.notNull(domainClass, "Domain class must not be null!");
@@ -53,7 +75,29 @@ public abstract class Querydsl4RepositorySupport {
 		// querydsl을 이렇게 넣어줘야 동적 sorting 오류 발생하지 않음.
 		// 기본 QuerydslRepositorySupport의 querydsl을 사용하면 sort시 필드 못찾는 오류 발생.
 		this.querydsl = new Querydsl(entityManager, new PathBuilder<>(path.getType(), path.getMetadata()));
-		this.queryFactory = new JPAQueryFactory(entityManager);
+	}
+
+	/**
+	 * JpaQueryFactoryConfig 에서 등록한 JPAQueryFactory 사용. (쿼리 실행 시간/row 수가 QueryMetrics 에 기록된다.)
+	 */
+	@Autowired
+	public void setQueryFactory(JPAQueryFactory queryFactory) {
+		this.queryFactory = queryFactory;
+	}
+
+	@Autowired
+	public void setSearchCountCache(SearchCountCache searchCountCache) {
+		this.searchCountCache = searchCountCache;
+	}
+
+	@Autowired
+	public void setQueryShapeCache(QueryShapeCache queryShapeCache) {
+		this.queryShapeCache = queryShapeCache;
+	}
+
+	@Autowired
+	public void setConcurrentCountExecutor(ConcurrentCountExecutor concurrentCountExecutor) {
+		this.concurrentCountExecutor = concurrentCountExecutor;
 	}
 
 	@PostConstruct
@@ -61,6 +105,9 @@ public abstract class Querydsl4RepositorySupport {
 		Assert.notNull(entityManager, "EntityManager must not be null!");
 		Assert.notNull(querydsl, "Querydsl must not be null!");
 		Assert.notNull(queryFactory, "QueryFactory must not be null!");
+		Assert.notNull(searchCountCache, "SearchCountCache must not be null!");
+		Assert.notNull(queryShapeCache, "QueryShapeCache must not be null!");
+		Assert.notNull(concurrentCountExecutor, "ConcurrentCountExecutor must not be null!");
 	}
 
 	protected JPAQueryFactory getQueryFactory() {
@@ -89,11 +136,257 @@ public abstract class Querydsl4RepositorySupport {
 		return PageableExecutionUtils.getPage(content, pageable, jpaQuery::fetchCount);
 	}
 
+	/**
+	 * querydsl.concurrent-count.enabled=true 이면 count 쿼리를 별도 커넥션에서 content 쿼리와 동시에 실행한다.
+	 * @see ConcurrentCountExecutor
+	 */
 	protected <T> Page<T> applyPagination(Pageable pageable, Function<JPAQueryFactory, JPAQuery> contentQuery,
 		Function<JPAQueryFactory, JPAQuery> countQuery) {
-		JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
-		List<T> content = getQuerydsl().applyPagination(pageable, jpaContentQuery).fetch();
 		JPAQuery countResult = countQuery.apply(getQueryFactory());
-		return PageableExecutionUtils.getPage(content, pageable, countResult::fetchCount);
+		ConcurrentCountExecutor.PendingCount pendingCount = concurrentCountExecutor.submit(countResult);
+		try {
+			JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
+			List<T> content = getQuerydsl().applyPagination(pageable, jpaContentQuery).fetch();
+			return PageableExecutionUtils.getPage(content, pageable, pendingCount::getAsLong);
+		} finally {
+			pendingCount.cancel();
+		}
+	}
+
+	/**
+	 * deferred join 페이징. 조건, 정렬, offset/limit 은 id 만 조회하는 idQuery 에 적용하고,
+	 * contentQuery 는 그 페이지의 id 들만 join 해서 조회한 후 idQuery 순서대로 돌려준다.
+	 * offset 이 크면 버려질 row 까지 join 해서 읽지 않고 인덱스에서 id 만 건너뛴다.
+	 * count 는 idQuery 로 구한다. (querydsl.concurrent-count.enabled=true 이면 동시에 실행)
+	 * @param pageable 정렬이 없으면 페이지 간 순서가 보장되지 않는다.
+	 * @param idQuery id 만 select 하고 조건에 필요한 join 만 하는 쿼리
+	 * @param contentQuery ids 로 조회하는 쿼리 (ex. where(member.id.in(ids)))
+	 * @param idOf content 의 id
+	 * @return
+	 */
+	protected <T, ID> Page<T> applyDeferredJoinPagination(Pageable pageable,
+		Function<JPAQueryFactory, JPAQuery<ID>> idQuery,
+		BiFunction<JPAQueryFactory, List<ID>, JPAQuery<T>> contentQuery, Function<T, ID> idOf) {
+		ConcurrentCountExecutor.PendingCount pendingCount = concurrentCountExecutor.submit(
+			idQuery.apply(getQueryFactory()));
+		try {
+			List<ID> ids = getQuerydsl().applyPagination(pageable, idQuery.apply(getQueryFactory())).fetch();
+			List<T> content = ids.isEmpty()
+				? Collections.emptyList()
+				: orderByIds(ids, contentQuery.apply(getQueryFactory(), ids).fetch(), idOf);
+			return PageableExecutionUtils.getPage(content, pageable, pendingCount::getAsLong);
+		} finally {
+			pendingCount.cancel();
+		}
+	}
+
+	/**
+	 * in 절 조회 결과를 ids 순서로 정렬한다. 그 사이에 삭제된 row 는 빠진다.
+	 */
+	private static <T, ID> List<T> orderByIds(List<ID> ids, List<T> rows, Function<T, ID> idOf) {
+		Map<ID, T> byId = new HashMap<>();
+		for (T row : rows) {
+			byId.put(idOf.apply(row), row);
+		}
+		List<T> ordered = new ArrayList<>(ids.size());
+		for (ID id : ids) {
+			T row = byId.get(id);
+			if (row != null) {
+				ordered.add(row);
+			}
+		}
+		return ordered;
+	}
+
+	/**
+	 * count 쿼리 없이 pageSize + 1 건을 조회해서 다음 페이지 존재 여부만 판단한다.
+	 * 전체 건수가 필요없는 무한 스크롤 같은 화면용.
+	 * @param pageable
+	 * @param contentQuery
+	 * @return
+	 */
+	protected <T> Slice<T> applySlicing(Pageable pageable, Function<JPAQueryFactory, JPAQuery> contentQuery) {
+		JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
+		getQuerydsl().applySorting(pageable.getSort(), jpaQuery);
+		if (pageable.isUnpaged()) {
+			return new SliceImpl<>(jpaQuery.fetch(), pageable, false);
+		}
+
+		List<T> content = jpaQuery
+			.offset(pageable.getOffset())
+			.limit(pageable.getPageSize() + 1)
+			.fetch();
+		boolean hasNext = content.size() > pageable.getPageSize();
+		if (hasNext) {
+			content = new ArrayList<>(content.subList(0, pageable.getPageSize()));
+		}
+		return new SliceImpl<>(content, pageable, hasNext);
+	}
+
+	/**
+	 * count 결과를 SearchCountCache 에 캐싱하는 페이징.
+	 * @param pageable
+	 * @param queryName 쿼리 이름 (ex. 메서드 이름). 조건이 같아도 쿼리가 다르면 count 가 다를 수 있으므로 키에 포함한다.
+	 * @param countCacheKey 정규화된 검색 조건처럼, 같은 count 가 나오는 요청이면 equals 가 같은 값
+	 * @param contentQuery
+	 * @return
+	 */
+	protected <T> Page<T> applyPagination(Pageable pageable, String queryName, Object countCacheKey,
+		Function<JPAQueryFactory, JPAQuery> contentQuery) {
+		JPAQuery jpaQuery = contentQuery.apply(getQueryFactory());
+		List<T> content = getQuerydsl().applyPagination(pageable, jpaQuery).fetch();
+		Object key = countCacheKey(queryName, countCacheKey);
+		return PageableExecutionUtils.getPage(content, pageable, () -> searchCountCache.get(key, jpaQuery::fetchCount));
+	}
+
+	/**
+	 * count 결과를 SearchCountCache 에 캐싱하는 페이징.
+	 * 캐시에 없으면 querydsl.concurrent-count.enabled=true 일 때 count 쿼리를 content 쿼리와 동시에 실행한다.
+	 * @see ConcurrentCountExecutor
+	 */
+	protected <T> Page<T> applyPagination(Pageable pageable, String queryName, Object countCacheKey,
+		Function<JPAQueryFactory, JPAQuery> contentQuery, Function<JPAQueryFactory, JPAQuery> countQuery) {
+		JPAQuery countResult = countQuery.apply(getQueryFactory());
+		Object key = countCacheKey(queryName, countCacheKey);
+		ConcurrentCountExecutor.PendingCount pendingCount = searchCountCache.contains(key)
+			? null : concurrentCountExecutor.submit(countResult);
+		try {
+			JPAQuery jpaContentQuery = contentQuery.apply(getQueryFactory());
+			List<T> content = getQuerydsl().applyPagination(pageable, jpaContentQuery).fetch();
+			LongSupplier count = pendingCount != null ? pendingCount : countResult::fetchCount;
+			return PageableExecutionUtils.getPage(content, pageable, () -> searchCountCache.get(key, count));
+		} finally {
+			if (pendingCount != null) {
+				pendingCount.cancel();
+			}
+		}
+	}
+
+	private Object countCacheKey(String queryName, Object countCacheKey) {
+		Assert.hasText(queryName, "queryName must not be empty");
+		return SearchCountCache.key(getClass().getName() + "." + queryName, countCacheKey);
+	}
+
+	/**
+	 * shapeKey 별로 JPQL 을 캐싱해서 조회.
+	 * @param queryName 리포지토리 안에서 쿼리를 구분하는 이름. 메트릭 태그로도 사용한다.
+	 * @param shapeKey 조건 유무 조합처럼, 같은 JPQL 이 나오는 요청이면 equals 가 같은 값
+	 * @param template 조건 값 대신 Param 을 사용한 쿼리. 캐시에 없을 때만 호출된다.
+	 * @param params Param 에 바인딩할 값
+	 * @return
+	 */
+	protected <T> List<T> fetchByShape(String queryName, Object shapeKey,
+		Function<JPAQueryFactory, JPAQuery<T>> template, Map<ParamExpression<?>, Object> params) {
+		return queryShapeCache.get(shapeQueryName(queryName), shapeKey,
+			() -> template.apply(getQueryFactory())).fetch(getEntityManager(), params);
+	}
+
+	/**
+	 * content, count 쿼리 모두 shapeKey 별로 JPQL 을 캐싱하는 페이징.
+	 * sort 는 JPQL 이 달라지므로 캐시 키에 포함하고, offset/limit 은 실행할 때 적용한다.
+	 * count 는 SearchCountCache 에 (shapeKey, params) 별로 캐싱한다.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> Page<T> applyPaginationByShape(Pageable pageable, String queryName, Object shapeKey,
+		Function<JPAQueryFactory, JPAQuery<T>> contentTemplate, Function<JPAQueryFactory, JPAQuery<?>> countTemplate,
+		Map<ParamExpression<?>, Object> params) {
+		String repositoryName = getClass().getName();
+		CompiledQuery<T> contentQuery = queryShapeCache.get(shapeQueryName(queryName),
+			Arrays.asList(shapeKey, pageable.getSort()),
+			() -> (JPAQuery<T>) getQuerydsl().applySorting(pageable.getSort(), contentTemplate.apply(getQueryFactory())));
+		CompiledQuery<?> countQuery = queryShapeCache.get(shapeQueryName(queryName) + ".count", shapeKey,
+			() -> (JPAQuery<Object>) countTemplate.apply(getQueryFactory()));
+
+		List<T> content = pageable.isPaged()
+			? contentQuery.fetch(getEntityManager(), params, pageable.getOffset(), pageable.getPageSize())
+			: contentQuery.fetch(getEntityManager(), params);
+		Object countKey = SearchCountCache.key(repositoryName, Arrays.asList(queryName, shapeKey, params));
+		return PageableExecutionUtils.getPage(content, pageable,
+			() -> searchCountCache.get(countKey, () -> countQuery.fetchCount(getEntityManager(), params)));
+	}
+
+	private String shapeQueryName(String queryName) {
+		Assert.hasText(queryName, "queryName must not be empty");
+		return getClass().getSimpleName() + "." + queryName;
+	}
+
+	/**
+	 * id 순 keyset 으로 chunkSize 건씩 조회해서 consumer 에 넘긴다. chunk 사이에 영속성 컨텍스트를 비우므로
+	 * 전체 건수와 상관없이 메모리는 chunk 하나만큼만 사용한다. (offset 을 쓰지 않으므로 뒤쪽 chunk 도 느려지지 않는다.)
+	 * 쓰기 트랜잭션이면 비우기 전에 flush 해서 consumer 가 변경한 엔티티를 반영하고,
+	 * 읽기 전용이면 스냅샷을 만들지 않도록 READ_ONLY 힌트로 조회한다. (변경해도 반영되지 않는다.)
+	 * @param idPath 정렬/keyset 기준 id (ex. member.id)
+	 * @param query 조건까지 적용한 쿼리. 정렬, limit 은 여기서 붙인다.
+	 * @param idOf 조회 결과에서 id 를 꺼내는 함수
+	 * @param chunkSize
+	 * @param consumer chunk 마다 호출. 넘겨받은 엔티티는 다음 chunk 전에 detach 된다.
+	 */
+	protected <T> void forEachChunk(NumberPath<Long> idPath, Function<JPAQueryFactory, JPAQuery<T>> query,
+		Function<T, Long> idOf, int chunkSize, Consumer<List<T>> consumer) {
+		Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+		boolean writable = TransactionSynchronizationManager.isActualTransactionActive()
+			&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+		Long lastId = null;
+		while (true) {
+			JPAQuery<T> chunkQuery = query.apply(getQueryFactory())
+				.where(lastId != null ? idPath.gt(lastId) : null)
+				.orderBy(idPath.asc())
+				.limit(chunkSize);
+			if (!writable) {
+				chunkQuery.setHint(QueryHints.READ_ONLY, true); // 스냅샷을 만들지 않음
+			}
+			List<T> chunk = chunkQuery.fetch();
+			if (chunk.isEmpty()) {
+				return;
+			}
+
+			consumer.accept(chunk);
+			lastId = idOf.apply(chunk.get(chunk.size() - 1));
+			if (writable) {
+				getEntityManager().flush(); // clear 하면 변경 내용이 버려지므로 먼저 반영
+			}
+			getEntityManager().clear();
+			if (chunk.size() < chunkSize) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 조회한 엔티티들의 지연 로딩 연관관계(ex. Member::getTeam)를 in 쿼리로 chunkSize 개씩 한 번에 로딩한다.
+	 * 로딩된 엔티티는 영속성 컨텍스트에 올라가므로 이후 프록시를 초기화해도 select 가 나가지 않는다. (N + 1 -> N / chunkSize + 1)
+	 * 이미 로딩된 연관관계와 null 은 건너뛴다.
+	 * @param entities 조회한 엔티티 (ex. page.getContent())
+	 * @param association 연관관계 getter. 프록시를 초기화하지 않는 getter 여야 한다.
+	 * @param associationType 연관관계 엔티티 타입
+	 * @param chunkSize in 절에 넣을 id 개수
+	 */
+	protected <E, A> void batchLoad(Collection<? extends E> entities, Function<E, A> association,
+		Class<A> associationType, int chunkSize) {
+		Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+		PersistenceUnitUtil persistenceUnitUtil = getEntityManager().getEntityManagerFactory().getPersistenceUnitUtil();
+
+		Set<Object> ids = new LinkedHashSet<>();
+		for (E entity : entities) {
+			A associated = association.apply(entity);
+			if (associated != null && !persistenceUnitUtil.isLoaded(associated)) {
+				ids.add(persistenceUnitUtil.getIdentifier(associated));
+			}
+		}
+		if (ids.isEmpty()) {
+			return;
+		}
+
+		EntityType<A> entityType = getEntityManager().getMetamodel().entity(associationType);
+		String idName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+		PathBuilder<A> path = new PathBuilder<>(associationType, "batchLoaded");
+		List<Object> idList = new ArrayList<>(ids);
+		for (int from = 0; from < idList.size(); from += chunkSize) {
+			List<Object> chunk = idList.subList(from, Math.min(from + chunkSize, idList.size()));
+			getQueryFactory()
+				.selectFrom(path)
+				.where(path.get(idName).in(chunk))
+				.fetch();
+		}
 	}
 }
@@ -0,0 +1,181 @@
+package com.example.querydsl.repository.support;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.querydsl.datasource.ReplicaConsistency;
+import com.example.querydsl.event.EntityChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 페이징 count 쿼리 결과 캐시.
+ * 같은 검색 조건이면 1페이지든 20페이지든 total 은 같기 때문에 count 쿼리를 매번 날리지 않는다.
+ *
+ * - ttl 이 지나면 만료, maximum-size 를 넘으면 LRU 에 가깝게 제거된다. (caffeine)
+ * - refresh-after 를 설정하면 그 시간이 지난 항목은 기존 값을 그대로 돌려주고 백그라운드에서 다시 count 한다. (stale-while-revalidate)
+ * - 엔티티가 insert/update/delete 되면 전부 무효화한다. 검색 조건이 여러 테이블에 걸쳐 있어서 어떤 키가 영향을 받는지 알 수 없다.
+ *   트랜잭션마다 처음 변경될 때와 완료될 때 한 번씩만 무효화한다. (flush/엔티티마다 무효화하지 않는다)
+ * - replica 라우팅 사용 시 커밋 직후에는 replica 에서 읽은 count 를 캐싱하지 않는다. (아직 복제되지 않은 이전 값일 수 있다)
+ */
+@Slf4j
+@Component
+public class SearchCountCache {
+
+	private final boolean enabled;
+	private final long refreshAfterNanos; // 0 이면 stale-while-revalidate 사용 안함
+	private final Cache<Object, CachedCount> cache;
+	private final ThreadPoolExecutor refreshExecutor;
+	private final ReplicaConsistency replicaConsistency;
+
+	// 무효화될 때마다 증가. count 쿼리 도중에 무효화되면 그 결과는 캐시에 넣지 않는다.
+	private final AtomicLong generation = new AtomicLong();
+	private final Object changedKey = new Object(); // 트랜잭션에서 엔티티를 변경했는지
+
+	public SearchCountCache(
+		@Value("${querydsl.count-cache.enabled:true}") boolean enabled,
+		@Value("${querydsl.count-cache.ttl:30s}") Duration ttl,
+		@Value("${querydsl.count-cache.maximum-size:10000}") long maximumSize,
+		@Value("${querydsl.count-cache.refresh-after:0s}") Duration refreshAfter,
+		ReplicaConsistency replicaConsistency) {
+		this.enabled = enabled;
+		this.replicaConsistency = replicaConsistency;
+		this.refreshAfterNanos = refreshAfter.toNanos();
+		this.cache = Caffeine.newBuilder()
+			.maximumSize(maximumSize)
+			.expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+			.recordStats()
+			.build();
+		// 갱신 요청이 밀리면 버린다. 버려진 항목은 ttl 이 지나면 만료된다.
+		this.refreshExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(100), new CustomizableThreadFactory("count-cache-refresh-"),
+			new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	/**
+	 * @param name 쿼리 이름. 같은 조건이라도 쿼리가 다르면 다른 키가 되도록 구분한다.
+	 * @param condition 정규화된 검색 조건. equals/hashCode 가 구현되어 있어야 한다.
+	 * @return 캐시 키
+	 */
+	public static Object key(String name, Object condition) {
+		return Arrays.asList(name, condition);
+	}
+
+	/**
+	 * 캐시된 count 를 돌려주고, 없으면 countQuery 를 실행해서 캐싱한다.
+	 * countQuery 는 stale-while-revalidate 갱신 때 다른 스레드에서 다시 실행될 수 있다.
+	 * @param key key(name, condition) 으로 만든 키
+	 * @param countQuery count 쿼리
+	 * @return count
+	 */
+	public long get(Object key, LongSupplier countQuery) {
+		if (!enabled) {
+			return countQuery.getAsLong();
+		}
+
+		CachedCount cached = cache.getIfPresent(key);
+		if (cached == null) {
+			return load(key, countQuery);
+		}
+
+		if (refreshAfterNanos > 0 && System.nanoTime() - cached.loadedAt > refreshAfterNanos
+			&& cached.refreshing.compareAndSet(false, true)) {
+			refreshExecutor.execute(() -> refresh(key, countQuery));
+		}
+		return cached.count;
+	}
+
+	/**
+	 * 캐시에 있으면 get 에서 count 쿼리를 실행하지 않으므로 미리 시작할 필요가 없다. (ConcurrentCountExecutor)
+	 */
+	public boolean contains(Object key) {
+		return enabled && cache.getIfPresent(key) != null;
+	}
+
+	private long load(Object key, LongSupplier countQuery) {
+		long loadGeneration = generation.get();
+		long count = countQuery.getAsLong();
+		// 변경한 트랜잭션 안의 count 는 커밋되지 않은 데이터를 포함하므로 캐싱하지 않는다.
+		if (loadGeneration == generation.get() && !replicaConsistency.mayReadStaleReplica()
+			&& !TransactionSynchronizationManager.hasResource(changedKey)) {
+			cache.put(key, new CachedCount(count));
+		}
+		return count;
+	}
+
+	private void refresh(Object key, LongSupplier countQuery) {
+		try {
+			load(key, countQuery);
+		} catch (RuntimeException e) {
+			// 갱신 실패 시 기존 값은 ttl 까지 유지된다.
+			log.warn("count cache refresh failed. key={}", key, e);
+		}
+	}
+
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		cache.invalidateAll();
+	}
+
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	/**
+	 * 트랜잭션에서 처음 변경될 때 바로 무효화해서 같은 트랜잭션 안의 조회는 변경된 데이터를 count 한다.
+	 * 커밋(또는 롤백) 전에 다른 트랜잭션이 이전 데이터로 다시 캐싱했을 수 있으므로 완료 후 한 번 더 무효화한다.
+	 * 벌크 저장처럼 한 트랜잭션에서 엔티티를 많이 바꿔도 무효화는 두 번이다.
+	 */
+	@EventListener
+	public void onEntityChanged(EntityChangedEvent event) {
+		if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+			invalidateAll();
+			return;
+		}
+		if (TransactionSynchronizationManager.hasResource(changedKey)) {
+			return;
+		}
+		TransactionSynchronizationManager.bindResource(changedKey, Boolean.TRUE);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(changedKey);
+				invalidateAll();
+			}
+		});
+		invalidateAll();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		refreshExecutor.shutdownNow();
+	}
+
+	private static class CachedCount {
+		private final long count;
+		private final long loadedAt = System.nanoTime();
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+
+		private CachedCount(long count) {
+			this.count = count;
+		}
+	}
+}
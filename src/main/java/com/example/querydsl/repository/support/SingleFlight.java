@@ -0,0 +1,131 @@
+package com.example.querydsl.repository.support;
+
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.transaction.TransactionTimedOutException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 같은 키로 동시에 들어온 요청은 먼저 온 요청(leader)의 실행 결과를 함께 받는다.
+ * 끝난 실행은 보관하지 않으므로 캐시와 달리 오래된 결과를 돌려주지 않는다. (실행 중에 들어온 요청만 결과를 공유)
+ * 공유된 결과는 여러 스레드가 같이 사용하므로 수정하면 안된다.
+ *
+ * - 기다리는 요청(follower)은 interrupt 되면 바로 CancellationException 으로 빠져나간다. (AsyncSearchExecutor timeout)
+ * - max-wait 이 지나도 leader 가 끝나지 않으면 follower 가 직접 실행한다.
+ * - leader 가 interrupt, 취소, timeout 으로 실패하면 leader 사정이므로 실패를 공유하지 않고 follower 가 다시 실행한다.
+ *
+ * 메트릭: querydsl.single-flight (name, result=leader|shared|timeout)
+ * @param <K> equals/hashCode 가 구현된 키
+ * @param <V> 결과
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+	private final long maxWaitMillis;
+	private final Counter leaderCounter;
+	private final Counter sharedCounter;
+	private final Counter timeoutCounter;
+
+	public SingleFlight(String name, Duration maxWait, MeterRegistry meterRegistry) {
+		this.maxWaitMillis = maxWait.toMillis();
+		this.leaderCounter = meterRegistry.counter("querydsl.single-flight", "name", name, "result", "leader");
+		this.sharedCounter = meterRegistry.counter("querydsl.single-flight", "name", name, "result", "shared");
+		this.timeoutCounter = meterRegistry.counter("querydsl.single-flight", "name", name, "result", "timeout");
+	}
+
+	/**
+	 * @param key 요청 키
+	 * @param loader 같은 키로 실행 중인 요청이 없을 때만 현재 스레드에서 실행
+	 * @return loader 결과. 실행 중인 요청이 있으면 그 결과 (실패했으면 같은 예외)
+	 */
+	public V execute(K key, Supplier<V> loader) {
+		CompletableFuture<V> flight = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+		if (existing != null) {
+			sharedCounter.increment();
+			return follow(existing, key, loader);
+		}
+
+		leaderCounter.increment();
+		V value;
+		try {
+			value = loader.get();
+		} catch (RuntimeException | Error e) {
+			// follower 가 다시 실행할 때 끝난 flight 에 합류하지 않도록 먼저 제거한다.
+			inFlight.remove(key, flight);
+			flight.completeExceptionally(isAbandoned(e) ? new LeaderAbandonedException(e) : e);
+			throw e;
+		}
+		inFlight.remove(key, flight);
+		flight.complete(value);
+		return value;
+	}
+
+	private V follow(CompletableFuture<V> flight, K key, Supplier<V> loader) {
+		try {
+			return flight.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("interrupted while waiting for in-flight result");
+		} catch (TimeoutException e) {
+			timeoutCounter.increment();
+			return loader.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof LeaderAbandonedException) {
+				return execute(key, loader);
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * leader 스레드의 interrupt, 취소, 트랜잭션/쿼리 timeout 으로 실패했는지
+	 */
+	private static boolean isAbandoned(Throwable e) {
+		if (Thread.currentThread().isInterrupted()) {
+			return true;
+		}
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof InterruptedException || t instanceof CancellationException
+				|| t instanceof TransactionTimedOutException || t instanceof SQLTimeoutException
+				|| t instanceof javax.persistence.QueryTimeoutException
+				|| t instanceof org.springframework.dao.QueryTimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return 실행 중인 키 수
+	 */
+	public int inFlightCount() {
+		return inFlight.size();
+	}
+
+	/**
+	 * follower 에게 leader 의 실패를 공유하지 않고 다시 실행하라고 알린다.
+	 */
+	private static class LeaderAbandonedException extends RuntimeException {
+		LeaderAbandonedException(Throwable cause) {
+			super(cause.toString(), cause, false, false);
+		}
+	}
+}
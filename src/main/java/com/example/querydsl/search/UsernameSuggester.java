@@ -0,0 +1,245 @@
+package com.example.querydsl.search;
+
+import static com.example.querydsl.entity.QMember.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.datasource.ReplicaRoutingDataSource;
+import com.example.querydsl.dto.MemberSuggestion;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.event.EntityChangedEvent;
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 회원명 자동완성. 키 입력마다 호출되므로 DB 를 거치지 않고 메모리의 정렬된 맵(username -> 회원)에서 찾는다.
+ * prefix 로 시작하는 username 범위를 훑어서 rank 기준 상위 size 건을 돌려준다.
+ *
+ * - 애플리케이션 시작 시 전체 회원을 읽어서 만들고, 이후에는 커밋된 EntityChangedEvent 로 갱신한다.
+ * - 벌크 update/delete 는 어떤 회원이 바뀌었는지 모르므로 백그라운드에서 다시 만든다. 다시 만드는 동안 들어온 변경은 끝난 후 다시 적용한다.
+ */
+@Slf4j
+@Component
+public class UsernameSuggester {
+
+	public enum Rank {
+		RECENT(Comparator.comparing(MemberSuggestion::getMemberId).reversed()), // 최근 가입 순 (시퀀스 id 역순)
+		AGE(Comparator.comparingInt(MemberSuggestion::getAge).reversed()); // 나이 많은 순
+
+		private final Comparator<MemberSuggestion> comparator;
+
+		Rank(Comparator<MemberSuggestion> comparator) {
+			this.comparator = comparator
+				.thenComparing(MemberSuggestion::getUsername)
+				.thenComparing(MemberSuggestion::getMemberId);
+		}
+
+		public static Rank from(String rank) {
+			return valueOf(rank.toUpperCase(Locale.ROOT));
+		}
+	}
+
+	private final JPAQueryFactory queryFactory;
+	private final TransactionTemplate transactionTemplate;
+	private final Rank defaultRank;
+	private final int maxSize;
+	private final ThreadPoolExecutor rebuildExecutor;
+
+	// username -> (member id -> 회원). 같은 username 이 여러 명일 수 있다.
+	private volatile NavigableMap<String, Map<Long, MemberSuggestion>> byUsername = new ConcurrentSkipListMap<>();
+	private volatile Map<Long, MemberSuggestion> byId = new ConcurrentHashMap<>();
+	private List<EntityChangedEvent> pendingDuringRebuild; // null 이면 다시 만드는 중이 아님. this 로 동기화
+
+	public UsernameSuggester(JPAQueryFactory queryFactory, PlatformTransactionManager transactionManager,
+		@Value("${querydsl.suggest.rank:recent}") String defaultRank,
+		@Value("${querydsl.suggest.max-size:50}") int maxSize) {
+		this.queryFactory = queryFactory;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.defaultRank = Rank.from(defaultRank);
+		this.maxSize = maxSize;
+		// 실행 중 하나 + 대기 하나. 벌크 chunk 마다 요청이 와도 그 이상은 버린다. (대기 중인 재구성이 반영해준다)
+		this.rebuildExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(1), new CustomizableThreadFactory("username-suggest-rebuild-"),
+			new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	/**
+	 * @param prefix username 시작 문자열 (대소문자 구분)
+	 * @param size 최대 건수. max-size 를 넘으면 max-size
+	 * @param rank null 이면 querydsl.suggest.rank
+	 * @return rank 순으로 정렬된 회원
+	 */
+	public List<MemberSuggestion> suggest(String prefix, int size, Rank rank) {
+		if (prefix == null || prefix.isEmpty() || size <= 0) {
+			return Collections.emptyList();
+		}
+		int limit = Math.min(size, maxSize);
+		Comparator<MemberSuggestion> order = (rank != null ? rank : defaultRank).comparator;
+
+		// 상위 limit 건만 유지하는 힙. 루트가 지금까지 중 가장 순위가 낮은 회원
+		PriorityQueue<MemberSuggestion> top = new PriorityQueue<>(limit + 1, order.reversed());
+		for (Map<Long, MemberSuggestion> members : prefixRange(prefix).values()) {
+			for (MemberSuggestion suggestion : members.values()) {
+				top.offer(suggestion);
+				if (top.size() > limit) {
+					top.poll();
+				}
+			}
+		}
+
+		List<MemberSuggestion> result = new ArrayList<>(top);
+		result.sort(order);
+		return result;
+	}
+
+	private NavigableMap<String, Map<Long, MemberSuggestion>> prefixRange(String prefix) {
+		char last = prefix.charAt(prefix.length() - 1);
+		if (last == Character.MAX_VALUE) {
+			return byUsername.tailMap(prefix, true);
+		}
+		String upper = prefix.substring(0, prefix.length() - 1) + (char)(last + 1);
+		return byUsername.subMap(prefix, true, upper, false);
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void build() {
+		rebuild();
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void onMemberCommitted(EntityChangedEvent event) {
+		if (!event.isAbout(Member.class)) {
+			return;
+		}
+		if (event.getType() == EntityChangedEvent.Type.BULK) {
+			rebuildExecutor.execute(this::rebuild);
+			return;
+		}
+		synchronized (this) {
+			apply(event);
+			if (pendingDuringRebuild != null) {
+				pendingDuringRebuild.add(event);
+			}
+		}
+	}
+
+	/**
+	 * DB 에서 전체 회원을 읽어서 새 맵을 만들고 바꿔 끼운다. 읽는 동안 커밋된 변경은 바꿔 끼운 후 다시 적용한다.
+	 */
+	void rebuild() {
+		synchronized (this) {
+			pendingDuringRebuild = new ArrayList<>();
+		}
+		NavigableMap<String, Map<Long, MemberSuggestion>> newByUsername = new ConcurrentSkipListMap<>();
+		Map<Long, MemberSuggestion> newById = new ConcurrentHashMap<>();
+		long start = System.currentTimeMillis();
+		try {
+			// 이후 커밋 이벤트를 이어서 적용하므로 replica 가 아니라 primary 에서 읽는다.
+			ReplicaRoutingDataSource.forcePrimary(() -> transactionTemplate.execute(status -> {
+				try (CloseableIterator<Tuple> rows = queryFactory
+					.select(member.id, member.username, member.age)
+					.from(member)
+					.setHint(QueryHints.FETCH_SIZE, 1000)
+					.setHint(QueryHints.READ_ONLY, true)
+					.iterate()) {
+					while (rows.hasNext()) {
+						Tuple row = rows.next();
+						put(newByUsername, newById,
+							new MemberSuggestion(row.get(member.id), row.get(member.username), row.get(member.age)));
+					}
+				}
+				return null;
+			}));
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				pendingDuringRebuild = null;
+			}
+			throw e;
+		}
+
+		synchronized (this) {
+			byUsername = newByUsername;
+			byId = newById;
+			pendingDuringRebuild.forEach(this::apply);
+			pendingDuringRebuild = null;
+		}
+		log.info("username suggester built. members={}, {}ms", newById.size(), System.currentTimeMillis() - start);
+	}
+
+	private void apply(EntityChangedEvent event) {
+		Long id = (Long) event.getId();
+		if (id == null) {
+			return;
+		}
+		switch (event.getType()) {
+			case INSERT:
+			case UPDATE:
+				String username = (String) event.getValue("username");
+				Integer age = (Integer) event.getValue("age");
+				remove(id);
+				if (username != null) {
+					put(byUsername, byId, new MemberSuggestion(id, username, age != null ? age : 0));
+				}
+				break;
+			case DELETE:
+				remove(id);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static void put(NavigableMap<String, Map<Long, MemberSuggestion>> byUsername,
+		Map<Long, MemberSuggestion> byId, MemberSuggestion suggestion) {
+		if (suggestion.getUsername() == null) {
+			return;
+		}
+		byUsername.computeIfAbsent(suggestion.getUsername(), key -> new ConcurrentHashMap<>())
+			.put(suggestion.getMemberId(), suggestion);
+		byId.put(suggestion.getMemberId(), suggestion);
+	}
+
+	private void remove(Long id) {
+		MemberSuggestion previous = byId.remove(id);
+		if (previous != null) {
+			byUsername.computeIfPresent(previous.getUsername(), (key, members) -> {
+				members.remove(id);
+				return members.isEmpty() ? null : members;
+			});
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		rebuildExecutor.shutdownNow();
+	}
+}
@@ -0,0 +1,218 @@
+package com.example.querydsl.search;
+
+import static com.example.querydsl.entity.QMember.*;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.datasource.ReplicaRoutingDataSource;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.event.EntityChangedEvent;
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 회원 username 의 trigram(연속된 3글자) -> member id 역색인.
+ * username like '%xxx%' 는 인덱스를 못 타서 member 전체를 읽으므로, 검색어의 trigram 을 모두 가진 id 만 후보로 골라서
+ * DB 에서는 id in (후보) 로 조회하고 like 로 한 번 더 확인한다.
+ *
+ * - 애플리케이션 시작(ApplicationReadyEvent) 시 전체 회원을 읽어서 만든다. 다 만들어지기 전에는 사용하지 않는다.
+ * - 추가는 flush 시점(EntityChangedEvent)에 바로, 제거는 커밋 후에 반영한다.
+ *   롤백되면 사용하지 않는 trigram/id 가 남지만 후보가 넓어질 뿐이고 DB 에서 다시 확인하므로 결과는 정확하다.
+ * - 벌크 delete 는 어떤 id 가 지워졌는지 모르므로 지워진 id 가 후보로 남는다. (DB 확인에서 걸러진다.)
+ */
+@Slf4j
+@Component
+public class UsernameTrigramIndex {
+
+	private static final int GRAM = 3;
+
+	private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+	private final Map<Long, String> committedUsernames = new ConcurrentHashMap<>(); // 제거할 trigram 계산용
+	private final JPAQueryFactory queryFactory;
+	private final TransactionTemplate transactionTemplate;
+	private final int maxCandidates;
+	private volatile boolean ready;
+
+	public UsernameTrigramIndex(JPAQueryFactory queryFactory, PlatformTransactionManager transactionManager,
+		@Value("${querydsl.username-index.max-candidates:1000}") int maxCandidates) {
+		this.queryFactory = queryFactory;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.maxCandidates = maxCandidates;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void build() {
+		long start = System.currentTimeMillis();
+		// 이후 커밋 이벤트로 갱신하므로 replica 가 아니라 primary 에서 읽는다.
+		int count = ReplicaRoutingDataSource.forcePrimary(() -> transactionTemplate.execute(status -> {
+			int loaded = 0;
+			try (CloseableIterator<Tuple> rows = queryFactory
+				.select(member.id, member.username)
+				.from(member)
+				.setHint(QueryHints.FETCH_SIZE, 1000)
+				.setHint(QueryHints.READ_ONLY, true)
+				.iterate()) {
+				while (rows.hasNext()) {
+					Tuple row = rows.next();
+					add(row.get(member.id), row.get(member.username));
+					committedUsernames.put(row.get(member.id), row.get(member.username));
+					loaded++;
+				}
+			}
+			return loaded;
+		}));
+		ready = true;
+		log.info("username trigram index built. members={}, trigrams={}, {}ms",
+			count, postings.size(), System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * @param substring username 에 포함된 문자열
+	 * @return username 에 substring 이 포함될 수 있는 member id.
+	 * 인덱스로 좁힐 수 없으면(준비 전, 3글자 미만, 후보가 max-candidates 초과) null
+	 */
+	public Set<Long> candidates(String substring) {
+		if (!ready || substring == null || substring.length() < GRAM) {
+			return null;
+		}
+
+		// 가장 작은 posting 부터 교집합
+		Set<String> grams = trigrams(substring);
+		Set<Long> smallest = null;
+		for (String gram : grams) {
+			Set<Long> ids = postings.get(gram);
+			if (ids == null) {
+				return Collections.emptySet();
+			}
+			if (smallest == null || ids.size() < smallest.size()) {
+				smallest = ids;
+			}
+		}
+
+		Set<Long> result = new HashSet<>();
+		for (Long id : smallest) {
+			boolean all = true;
+			for (String gram : grams) {
+				Set<Long> ids = postings.get(gram);
+				if (ids == null || !ids.contains(id)) {
+					all = false;
+					break;
+				}
+			}
+			if (all) {
+				result.add(id);
+				if (result.size() > maxCandidates) {
+					return null;
+				}
+			}
+		}
+		return result;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * insert/update 는 flush 시점에 바로 추가한다. 같은 트랜잭션 안에서 바로 검색할 수 있다.
+	 */
+	@EventListener
+	public void onMemberChanged(EntityChangedEvent event) {
+		if (!event.isAbout(Member.class)) {
+			return;
+		}
+		if (event.getType() == EntityChangedEvent.Type.INSERT || event.getType() == EntityChangedEvent.Type.UPDATE) {
+			add((Long) event.getId(), (String) event.getValue("username"));
+		}
+	}
+
+	/**
+	 * 변경 전 username 의 trigram 은 커밋된 후에 제거한다. 새 username 에도 있는 trigram 은 남긴다.
+	 */
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public synchronized void afterMemberChangeCommitted(EntityChangedEvent event) {
+		if (!event.isAbout(Member.class) || event.getId() == null) {
+			return;
+		}
+		Long id = (Long) event.getId();
+		switch (event.getType()) {
+			case INSERT:
+				committedUsernames.put(id, nullToEmpty((String) event.getValue("username")));
+				break;
+			case UPDATE:
+				String username = nullToEmpty((String) event.getValue("username"));
+				String previous = committedUsernames.put(id, username);
+				if (previous != null && !previous.equals(username)) {
+					Set<String> removed = trigrams(previous);
+					removed.removeAll(trigrams(username));
+					remove(id, removed);
+				}
+				break;
+			case DELETE:
+				String deleted = committedUsernames.remove(id);
+				if (deleted != null) {
+					remove(id, trigrams(deleted));
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void add(Long id, String username) {
+		if (id == null || username == null) {
+			return;
+		}
+		for (String gram : trigrams(username)) {
+			// remove 가 빈 set 을 map 에서 빼는 것과 같은 락 안에서 추가해야 빠진 set 에 추가되어 유실되지 않는다.
+			postings.compute(gram, (key, ids) -> {
+				Set<Long> target = ids != null ? ids : ConcurrentHashMap.newKeySet();
+				target.add(id);
+				return target;
+			});
+		}
+	}
+
+	/**
+	 * 제거와 빈 set 확인을 compute 하나로 해서 add 와 번갈아 실행되지 않게 한다.
+	 */
+	private void remove(Long id, Set<String> grams) {
+		for (String gram : grams) {
+			postings.computeIfPresent(gram, (key, ids) -> {
+				ids.remove(id);
+				return ids.isEmpty() ? null : ids;
+			});
+		}
+	}
+
+	private static Set<String> trigrams(String value) {
+		Set<String> grams = new HashSet<>();
+		for (int i = 0; i + GRAM <= value.length(); i++) {
+			grams.add(value.substring(i, i + GRAM));
+		}
+		return grams;
+	}
+
+	private static String nullToEmpty(String value) {
+		return Objects.toString(value, "");
+	}
+}
@@ -0,0 +1,137 @@
+package com.example.querydsl.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.querydsl.sql.StatementScope;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 검색을 톰캣 요청 스레드가 아닌 전용 스레드 풀에서 실행하고 DeferredResult 로 응답한다.
+ * 느린 검색이 몰려도 전용 풀만 밀리고 톰캣 스레드는 다른 요청(/hello 등)을 계속 처리한다.
+ *
+ * - endpoint 마다 동시에 실행(+ 대기)할 수 있는 수를 제한한다. 넘으면 바로 503
+ * - 스레드 풀 큐가 꽉 차도 바로 503
+ * - timeout 이 지나면 503 으로 응답하고 실행 중인 검색은 interrupt 한다. 끝날 때까지 endpoint 허용 수는 돌려주지 않는다. (큐에서 대기 중이었으면 바로 돌려준다)
+ *
+ * interrupt 로는 실행 중인 JDBC statement 가 멈추지 않으므로, 검색은 timeout 을 건 readOnly 트랜잭션에서 실행한다.
+ * JpaTransactionManager 가 남은 시간을 javax.persistence.query.timeout 으로 쿼리마다 걸어서 DB 가 statement 를 취소하고,
+ * 시간이 지난 뒤에 만드는 쿼리는 TransactionTimedOutException 으로 실패한다. (리포지토리의 @Transactional 은 이 트랜잭션에 참여)
+ * 검색 스레드에서 실행한 SQL 도 요청의 StatementScope 에 기록되도록 scope 를 이어준다.
+ *
+ * 메트릭
+ * - querydsl.async.rejected (endpoint, reason=concurrency|queue)
+ * - querydsl.async.timeout (endpoint)
+ * - querydsl.async.active, querydsl.async.queued
+ */
+@Slf4j
+@Component
+public class AsyncSearchExecutor {
+
+	private final ThreadPoolExecutor executor;
+	private final int maxConcurrentPerEndpoint;
+	private final long timeoutMillis;
+	private final MeterRegistry meterRegistry;
+	private final TransactionTemplate transactionTemplate;
+	private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+
+	public AsyncSearchExecutor(MeterRegistry meterRegistry, PlatformTransactionManager transactionManager,
+		@Value("${querydsl.async.pool-size:8}") int poolSize,
+		@Value("${querydsl.async.queue-capacity:100}") int queueCapacity,
+		@Value("${querydsl.async.max-concurrent-per-endpoint:20}") int maxConcurrentPerEndpoint,
+		@Value("${querydsl.async.timeout:5s}") Duration timeout) {
+		this.meterRegistry = meterRegistry;
+		this.maxConcurrentPerEndpoint = maxConcurrentPerEndpoint;
+		this.timeoutMillis = timeout.toMillis();
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		this.transactionTemplate.setTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeoutMillis + 999)));
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("async-search-"),
+			new ThreadPoolExecutor.AbortPolicy());
+
+		Gauge.builder("querydsl.async.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+		Gauge.builder("querydsl.async.queued", executor, e -> e.getQueue().size()).register(meterRegistry);
+	}
+
+	/**
+	 * @param endpoint 동시 실행 수 제한과 메트릭 태그에 사용할 이름
+	 * @param search 전용 스레드에서 실행할 검색
+	 * @return 검색 결과. 거절되거나 timeout 이면 503 (ResponseStatusException)
+	 */
+	public <T> DeferredResult<T> submit(String endpoint, Supplier<T> search) {
+		DeferredResult<T> result = new DeferredResult<>(timeoutMillis);
+
+		Semaphore bulkhead = bulkheads.computeIfAbsent(endpoint, key -> new Semaphore(maxConcurrentPerEndpoint));
+		if (!bulkhead.tryAcquire()) {
+			reject(result, endpoint, "concurrency");
+			return result;
+		}
+
+		AtomicBoolean claimed = new AtomicBoolean(); // 실행 또는 timeout 중 먼저 가져간 쪽이 허용 수를 돌려준다.
+		Future<?> future;
+		try {
+			future = executor.submit(StatementScope.propagate(() -> {
+				if (!claimed.compareAndSet(false, true)) {
+					return;
+				}
+				try {
+					result.setResult(transactionTemplate.execute(status -> search.get()));
+				} catch (RuntimeException e) {
+					result.setErrorResult(e);
+				} finally {
+					bulkhead.release();
+				}
+			}));
+		} catch (RejectedExecutionException e) {
+			bulkhead.release();
+			reject(result, endpoint, "queue");
+			return result;
+		}
+
+		result.onTimeout(() -> {
+			meterRegistry.counter("querydsl.async.timeout", "endpoint", endpoint).increment();
+			if (claimed.compareAndSet(false, true)) {
+				bulkhead.release(); // 큐에서 대기 중이던 검색은 실행되지 않는다.
+			}
+			future.cancel(true);
+			result.setErrorResult(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "search timed out"));
+		});
+		return result;
+	}
+
+	private void reject(DeferredResult<?> result, String endpoint, String reason) {
+		log.debug("async search rejected. endpoint={}, reason={}", endpoint, reason);
+		meterRegistry.counter("querydsl.async.rejected", "endpoint", endpoint, "reason", reason).increment();
+		result.setErrorResult(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "too many searches"));
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
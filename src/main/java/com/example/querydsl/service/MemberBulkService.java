@@ -0,0 +1,159 @@
+package com.example.querydsl.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.querydsl.dto.MemberBulkRequest;
+import com.example.querydsl.dto.MemberBulkResult;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.TeamRepository;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 회원 대량 등록.
+ * chunk-size 건씩 트랜잭션 하나로 저장하고, 끝나면 flush/clear 해서 영속성 컨텍스트가 커지지 않게 한다.
+ * insert 는 hibernate.jdbc.batch_size 단위로 묶여서 나가고, id 는 시퀀스에서 allocationSize 만큼 미리 받아온다.
+ */
+@Slf4j
+@Service
+public class MemberBulkService {
+
+	private final EntityManager em;
+	private final TeamRepository teamRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final ObjectMapper objectMapper;
+	private final int chunkSize;
+
+	public MemberBulkService(EntityManager em, TeamRepository teamRepository,
+		PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+		@Value("${querydsl.bulk.chunk-size:1000}") int chunkSize) {
+		this.em = em;
+		this.teamRepository = teamRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.objectMapper = objectMapper;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * JSON 배열([{"username":..,"age":..,"teamName":..}, ...])을 한 건씩 읽으면서 chunk 단위로 저장한다.
+	 * 요청 전체를 메모리에 올리지 않는다. chunk 마다 커밋되므로 중간에 실패하면 이전 chunk 까지는 저장된 상태로 남는다.
+	 * 배열이 아니거나, 배열 안에 객체가 아닌 값이 있거나, JSON 형식이 잘못되었으면 400 으로 응답한다.
+	 * @param json 요청 body
+	 * @return
+	 */
+	public MemberBulkResult ingest(InputStream json) throws IOException {
+		long memberCount = 0;
+		long createdTeamCount = 0;
+
+		try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw badRequest("request body must be a JSON array", parser);
+			}
+
+			List<MemberBulkRequest> chunk = new ArrayList<>(chunkSize);
+			JsonToken token;
+			while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+				chunk.add(objectMapper.readValue(parser, MemberBulkRequest.class));
+				if (chunk.size() == chunkSize) {
+					createdTeamCount += saveChunk(chunk);
+					memberCount += chunk.size();
+					chunk.clear();
+				}
+			}
+			if (token != JsonToken.END_ARRAY) {
+				// 여기서 멈추면 나머지가 저장되지 않은 채로 성공 응답이 나가므로 실패로 처리한다.
+				throw badRequest("array elements must be JSON objects. saved " + memberCount + " members", parser);
+			}
+			if (!chunk.isEmpty()) {
+				createdTeamCount += saveChunk(chunk);
+				memberCount += chunk.size();
+			}
+		} catch (JsonProcessingException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+				"invalid JSON. saved " + memberCount + " members: " + e.getOriginalMessage(), e);
+		}
+
+		log.info("bulk insert finished. members={}, createdTeams={}", memberCount, createdTeamCount);
+		return new MemberBulkResult(memberCount, createdTeamCount);
+	}
+
+	private ResponseStatusException badRequest(String message, JsonParser parser) {
+		return new ResponseStatusException(HttpStatus.BAD_REQUEST,
+			message + " (" + parser.getCurrentToken() + " at " + parser.getCurrentLocation() + ")");
+	}
+
+	/**
+	 * chunk 하나를 트랜잭션 하나로 저장한다.
+	 * @return 새로 만든 팀 수
+	 */
+	private int saveChunk(List<MemberBulkRequest> chunk) {
+		return transactionTemplate.execute(status -> {
+			Map<String, Team> teams = new HashMap<>();
+			int createdTeamCount = resolveTeams(chunk, teams);
+
+			for (MemberBulkRequest request : chunk) {
+				Team team = StringUtils.hasText(request.getTeamName()) ? teams.get(request.getTeamName()) : null;
+				em.persist(Member.builder().username(request.getUsername()).age(request.getAge()).team(team).build());
+			}
+
+			// batch insert 전송 후 영속성 컨텍스트 비우기
+			em.flush();
+			em.clear();
+			return createdTeamCount;
+		});
+	}
+
+	/**
+	 * chunk 에 나온 팀 이름을 in 쿼리 한 번으로 찾고, 없는 팀은 새로 만든다.
+	 * @param teams 팀 이름 -> 팀. 여기에 채워진다.
+	 * @return 새로 만든 팀 수
+	 */
+	private int resolveTeams(List<MemberBulkRequest> chunk, Map<String, Team> teams) {
+		Set<String> names = new LinkedHashSet<>();
+		for (MemberBulkRequest request : chunk) {
+			if (StringUtils.hasText(request.getTeamName())) {
+				names.add(request.getTeamName());
+			}
+		}
+		if (names.isEmpty()) {
+			return 0;
+		}
+
+		for (Team team : teamRepository.findByNameIn(names)) {
+			teams.putIfAbsent(team.getName(), team);
+		}
+
+		int createdTeamCount = 0;
+		for (String name : names) {
+			if (!teams.containsKey(name)) {
+				Team team = Team.builder().name(name).build();
+				em.persist(team);
+				teams.put(name, team);
+				createdTeamCount++;
+			}
+		}
+		return createdTeamCount;
+	}
+}
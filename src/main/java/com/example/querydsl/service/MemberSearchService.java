@@ -0,0 +1,79 @@
+package com.example.querydsl.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.MemberTeamDto;
+import com.example.querydsl.event.DataVersion;
+import com.example.querydsl.repository.MemberRepository;
+import com.example.querydsl.repository.support.SingleFlight;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 회원 페이지 검색. 같은 조건 + 페이지로 동시에 들어온 검색은 content/count 쿼리를 한 번만 실행하고 결과를 공유한다.
+ * (인기 목록 새로고침 등 같은 요청이 몰릴 때)
+ *
+ * 쓰기 트랜잭션 안에서 호출하면 커밋 전 변경이 보이는 결과를 다른 요청과 공유하면 안되므로 바로 실행한다.
+ */
+@Service
+public class MemberSearchService {
+
+	private final MemberRepository memberRepository;
+	private final DataVersion dataVersion;
+	private final SingleFlight<Object, Page<MemberTeamDto>> searchFlight;
+
+	public MemberSearchService(MemberRepository memberRepository, DataVersion dataVersion, MeterRegistry meterRegistry,
+		@Value("${querydsl.single-flight.max-wait:5s}") Duration maxWait) {
+		this.memberRepository = memberRepository;
+		this.dataVersion = dataVersion;
+		this.searchFlight = new SingleFlight<>("member-search", maxWait, meterRegistry);
+	}
+
+	public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
+		if (isInWriteTransaction()) {
+			return memberRepository.searchPageSimple(condition, pageable);
+		}
+		return searchFlight.execute(key("searchPageSimple", condition, pageable),
+			() -> shared(memberRepository.searchPageSimple(condition, pageable)));
+	}
+
+	public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+		if (isInWriteTransaction()) {
+			return memberRepository.searchPageComplex(condition, pageable);
+		}
+		return searchFlight.execute(key("searchPageComplex", condition, pageable),
+			() -> shared(memberRepository.searchPageComplex(condition, pageable)));
+	}
+
+	/**
+	 * 빈 문자열 조건은 null 과 같은 쿼리가 나가므로 정규화한 조건으로 비교한다.
+	 * 데이터 버전도 키에 넣어서 새 버전을 읽은 요청이 이전 버전에서 시작한 검색 결과를 받지 않게 한다. (ETag)
+	 */
+	private Object key(String name, MemberSearchCondition condition, Pageable pageable) {
+		return Arrays.asList(name, condition.normalize(), pageable, dataVersion.current());
+	}
+
+	/**
+	 * 같은 Page 를 여러 요청이 받으므로 content 목록을 바꿀 수 없게 감싼다. (Page 구현에 상관없이)
+	 * MemberTeamDto 자체는 변경할 수 있으므로 받은 쪽에서 값을 바꾸면 안된다.
+	 */
+	private static Page<MemberTeamDto> shared(Page<MemberTeamDto> page) {
+		return new PageImpl<>(Collections.unmodifiableList(page.getContent()), page.getPageable(),
+			page.getTotalElements());
+	}
+
+	private static boolean isInWriteTransaction() {
+		return TransactionSynchronizationManager.isActualTransactionActive()
+			&& !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+	}
+}
@@ -0,0 +1,88 @@
+package com.example.querydsl.sql;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * p6spy 로 실행되는 모든 SQL 을 현재 스레드의 StatementScope 에 기록하고, scope 가 닫힐 때 임계치를 검사한다.
+ * JdbcEventListener 빈은 p6spy-spring-boot-starter 가 자동으로 등록한다.
+ *
+ * - max-statements: scope 하나에서 실행할 수 있는 SQL 수
+ * - max-repeated-selects: 정규화했을 때 같은 select 를 반복할 수 있는 횟수 (지연 로딩 N+1 감지)
+ * - fail-on-violation: true 면 임계치를 넘었을 때 예외, false 면 warn 로그 (테스트에서는 true)
+ *   open 으로 직접 연 scope(StatementScopeExtension 등)에만 적용된다. 요청 scope(openLogOnly)는 닫힐 때 응답이 이미 커밋되어서
+ *   예외를 던져도 응답을 바꿀 수 없으므로 항상 warn 로그만 남긴다.
+ */
+@Slf4j
+@Component
+public class SqlStatementDetector extends SimpleJdbcEventListener {
+
+	private final int maxStatements;
+	private final int maxRepeatedSelects;
+	private final boolean failOnViolation;
+
+	public SqlStatementDetector(
+		@Value("${querydsl.statement-detector.max-statements:100}") int maxStatements,
+		@Value("${querydsl.statement-detector.max-repeated-selects:10}") int maxRepeatedSelects,
+		@Value("${querydsl.statement-detector.fail-on-violation:false}") boolean failOnViolation) {
+		this.maxStatements = maxStatements;
+		this.maxRepeatedSelects = maxRepeatedSelects;
+		this.failOnViolation = failOnViolation;
+	}
+
+	/**
+	 * 설정된 임계치로 현재 스레드에 scope 를 연다. try-with-resources 로 닫아야 한다.
+	 * @param name 로그에 남길 이름 (ex. GET /v3/members)
+	 */
+	public StatementScope open(String name) {
+		return open(name, maxStatements, maxRepeatedSelects);
+	}
+
+	public StatementScope open(String name, int maxStatements, int maxRepeatedSelects) {
+		return new StatementScope(name, maxStatements, maxRepeatedSelects, scope -> check(scope, failOnViolation));
+	}
+
+	/**
+	 * fail-on-violation 과 상관없이 임계치를 넘으면 warn 로그만 남기는 scope 를 연다. (StatementScopeFilter)
+	 */
+	public StatementScope openLogOnly(String name) {
+		return new StatementScope(name, maxStatements, maxRepeatedSelects, scope -> check(scope, false));
+	}
+
+	@Override
+	public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos,
+		SQLException e) {
+		StatementScope scope = StatementScope.current();
+		if (scope != null) {
+			scope.record(statementInformation.getSql(), statementInformation.getSqlWithValues());
+		}
+	}
+
+	private void check(StatementScope scope, boolean fail) {
+		List<String> violations = scope.getViolations();
+		if (violations.isEmpty()) {
+			return;
+		}
+
+		StringBuilder message = new StringBuilder()
+			.append("[").append(scope.getName()).append("] executed ").append(scope.getStatementCount())
+			.append(" statements. ").append(violations);
+		for (Map.Entry<String, Integer> entry : scope.getCounts().entrySet()) {
+			message.append("\n  ").append(entry.getValue()).append(" x ").append(entry.getKey());
+		}
+
+		if (fail) {
+			throw new IllegalStateException(message.toString());
+		}
+		log.warn(message.toString());
+	}
+}
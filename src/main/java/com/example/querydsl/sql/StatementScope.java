@@ -0,0 +1,198 @@
+package com.example.querydsl.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 한 범위(HTTP 요청, 테스트 메서드 등) 안에서 실행된 SQL 을 정규화된 SQL 별로 센다.
+ * 현재 스레드에 열린 scope 에만 기록되며, scope 안에서 다시 scope 를 열면 바깥 scope 에도 같이 기록된다.
+ * 다른 스레드에서 실행하는 작업은 propagate 로 감싸면 같은 scope 에 기록된다. (여러 스레드에서 동시에 기록할 수 있다)
+ *
+ * @see SqlStatementDetector#open(String)
+ */
+public class StatementScope implements AutoCloseable {
+
+	private static final ThreadLocal<StatementScope> CURRENT = new ThreadLocal<>();
+
+	private static final int MAX_CAPTURED_STATEMENTS = 1000; // 값이 바인딩된 SQL 은 이 개수까지만 보관
+
+	private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private final String name;
+	private final int maxStatements;
+	private final int maxRepeatedSelects;
+	private final StatementScope parent;
+	private final Consumer<StatementScope> onClose;
+
+	private final Map<String, Integer> counts = new LinkedHashMap<>();
+	private final List<String> statements = new ArrayList<>();
+	private int statementCount;
+	private boolean closed;
+
+	StatementScope(String name, int maxStatements, int maxRepeatedSelects, Consumer<StatementScope> onClose) {
+		this.name = name;
+		this.maxStatements = maxStatements;
+		this.maxRepeatedSelects = maxRepeatedSelects;
+		this.onClose = onClose;
+		this.parent = CURRENT.get();
+		CURRENT.set(this);
+	}
+
+	static StatementScope current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * 현재 스레드의 scope 를 다른 스레드에서 실행할 작업에 이어준다. scope 가 없으면 task 를 그대로 돌려준다.
+	 */
+	public static Runnable propagate(Runnable task) {
+		StatementScope scope = CURRENT.get();
+		if (scope == null) {
+			return task;
+		}
+		return () -> {
+			StatementScope previous = attach(scope);
+			try {
+				task.run();
+			} finally {
+				attach(previous);
+			}
+		};
+	}
+
+	/**
+	 * @see #propagate(Runnable)
+	 */
+	public static <T> Callable<T> propagate(Callable<T> task) {
+		StatementScope scope = CURRENT.get();
+		if (scope == null) {
+			return task;
+		}
+		return () -> {
+			StatementScope previous = attach(scope);
+			try {
+				return task.call();
+			} finally {
+				attach(previous);
+			}
+		};
+	}
+
+	private static StatementScope attach(StatementScope scope) {
+		StatementScope previous = CURRENT.get();
+		if (scope != null) {
+			CURRENT.set(scope);
+		} else {
+			CURRENT.remove();
+		}
+		return previous;
+	}
+
+	/**
+	 * @param sql ? 가 남아있는 SQL
+	 * @param sqlWithValues 값이 바인딩된 SQL. EXPLAIN 등으로 다시 실행할 때 사용
+	 */
+	void record(String sql, String sqlWithValues) {
+		String normalized = normalize(sql);
+		for (StatementScope scope = this; scope != null; scope = scope.parent) {
+			scope.add(normalized, sqlWithValues);
+		}
+	}
+
+	private synchronized void add(String normalized, String sqlWithValues) {
+		statementCount++;
+		counts.merge(normalized, 1, Integer::sum);
+		if (statements.size() < MAX_CAPTURED_STATEMENTS) {
+			statements.add(sqlWithValues);
+		}
+	}
+
+	/**
+	 * 주석 제거, 리터럴과 in 목록을 ? 로 바꾸고 공백을 정리해서 같은 모양의 SQL 끼리 묶이게 한다.
+	 */
+	public static String normalize(String sql) {
+		if (sql == null) {
+			return "";
+		}
+		String normalized = COMMENT.matcher(sql).replaceAll(" ");
+		normalized = STRING_LITERAL.matcher(normalized).replaceAll("?");
+		normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+		normalized = IN_LIST.matcher(normalized).replaceAll("(?)");
+		return WHITESPACE.matcher(normalized).replaceAll(" ").trim().toLowerCase();
+	}
+
+	/**
+	 * 임계치를 넘은 항목. 없으면 빈 리스트
+	 */
+	public synchronized List<String> getViolations() {
+		List<String> violations = new ArrayList<>();
+		if (statementCount > maxStatements) {
+			violations.add("statements " + statementCount + " > " + maxStatements);
+		}
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			// 같은 select 가 파라미터만 바뀌어서 반복되면 지연 로딩 N+1 일 가능성이 높다.
+			if (entry.getValue() > maxRepeatedSelects && entry.getKey().startsWith("select")) {
+				violations.add("repeated select x" + entry.getValue() + " > " + maxRepeatedSelects + ": " + entry.getKey());
+			}
+		}
+		return violations;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public synchronized int getStatementCount() {
+		return statementCount;
+	}
+
+	/**
+	 * 정규화된 SQL -> 실행 횟수 (실행 순서대로). 호출한 시점의 복사본
+	 */
+	public synchronized Map<String, Integer> getCounts() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(counts));
+	}
+
+	/**
+	 * 값이 바인딩된 SQL (실행 순서대로, 최대 MAX_CAPTURED_STATEMENTS 개). 호출한 시점의 복사본
+	 */
+	public synchronized List<String> getStatements() {
+		return Collections.unmodifiableList(new ArrayList<>(statements));
+	}
+
+	/**
+	 * 현재 스레드에서 scope 를 떼어낸다. 닫지는 않으므로 propagate 로 이어준 작업은 계속 기록된다.
+	 * 비동기 요청처럼 다른 스레드에서 나중에 close 할 때 사용한다.
+	 */
+	public void detach() {
+		if (CURRENT.get() == this) {
+			attach(parent);
+		}
+	}
+
+	/**
+	 * scope 를 닫고 임계치를 검사한다. (fail-on-violation 이면 예외)
+	 * 현재 스레드에 열려 있으면 떼어내므로, 연 스레드가 아닌 곳에서 닫아도 된다.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		detach();
+		onClose.accept(this);
+	}
+}
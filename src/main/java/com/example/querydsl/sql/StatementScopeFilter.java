@@ -0,0 +1,87 @@
+package com.example.querydsl.sql;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * HTTP 요청 하나를 StatementScope 하나로 묶어서 요청당 실행된 SQL 수를 검사한다.
+ * 운영에서는 sample-rate 로 일부 요청만 검사한다.
+ *
+ * scope 가 닫힐 때는 응답이 이미 커밋되어 있으므로 임계치를 넘어도 warn 로그만 남긴다. (fail-on-violation 무시)
+ * 비동기 요청은 검색이 끝날 때(AsyncListener)까지 scope 를 열어둔다. 검색/count 스레드는 StatementScope.propagate 로 이 scope 에 기록한다.
+ */
+@Component
+public class StatementScopeFilter extends OncePerRequestFilter {
+
+	private final SqlStatementDetector detector;
+	private final boolean enabled;
+	private final double sampleRate;
+
+	public StatementScopeFilter(SqlStatementDetector detector,
+		@Value("${querydsl.statement-detector.enabled:true}") boolean enabled,
+		@Value("${querydsl.statement-detector.sample-rate:1.0}") double sampleRate) {
+		this.detector = detector;
+		this.enabled = enabled;
+		this.sampleRate = sampleRate;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !enabled || ThreadLocalRandom.current().nextDouble() >= sampleRate;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+		throws ServletException, IOException {
+		StatementScope scope = detector.openLogOnly(request.getMethod() + " " + request.getRequestURI());
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			if (request.isAsyncStarted()) {
+				scope.detach();
+				request.getAsyncContext().addListener(new ScopeClosingListener(scope));
+			} else {
+				scope.close();
+			}
+		}
+	}
+
+	private static class ScopeClosingListener implements AsyncListener {
+		private final StatementScope scope;
+
+		private ScopeClosingListener(StatementScope scope) {
+			this.scope = scope;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			scope.close();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			scope.close();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			scope.close();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			event.getAsyncContext().addListener(this); // 다시 비동기로 시작하면 리스너를 새로 등록해야 한다.
+		}
+	}
+}
@@ -0,0 +1,339 @@
+package com.example.querydsl.stats;
+
+import static com.example.querydsl.entity.QMember.*;
+import static com.example.querydsl.entity.QTeam.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
+
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.datasource.ReplicaRoutingDataSource;
+import com.example.querydsl.dto.TeamStatsDto;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.event.EntityChangedEvent;
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 팀별 회원 수, 나이 합/평균/최대/최소. 조회할 때마다 member 를 group by 하지 않고 메모리에서 바로 돌려준다.
+ *
+ * - 커밋된 회원 insert/update/delete 이벤트로 팀별 누적값(LongAdder)을 증감한다. 최대/최소는 나이별 회원 수로 구한다.
+ * - 벌크 update/delete 는 어떤 회원이 바뀌었는지 모르므로 DB 에서 다시 집계(대사)한다. 주기적으로도 대사한다.
+ * - 대사 쿼리 도중에 반영된 이벤트가 있거나, 변경하고 아직 이벤트 반영이 끝나지 않은 트랜잭션이 있으면
+ *   그 변경이 집계에 들어갔는지 알 수 없으므로 대사 결과를 버린다. (커밋된 변경을 대사가 읽은 뒤 이벤트로 한 번 더 더하지 않도록)
+ *   버려지거나 실패한 대사는 간격을 늘려가며(reconcile-retry-backoff ~ reconcile-retry-max-backoff) 다시 한다.
+ *   쓰기가 계속 들어와도 대사 한 번이 끝나는 사이에 진행 중인 쓰기가 없는 순간이 오면 성공한다.
+ *   reconcile-max-attempts 번 모두 버려지면 warn 로그를 남기고 다음 주기 대사까지 기다린다.
+ */
+@Slf4j
+@Component
+public class TeamStatsReadModel {
+
+	private final JPAQueryFactory queryFactory;
+	private final TransactionTemplate transactionTemplate;
+	private final ThreadPoolExecutor reconcileExecutor;
+	private final long retryBackoffMillis;
+	private final long maxRetryBackoffMillis;
+	private final int maxAttempts;
+
+	private volatile Stats stats = new Stats();
+	private final AtomicLong appliedEvents = new AtomicLong(); // 대사 도중에 반영된 이벤트가 있는지 확인용
+	private final AtomicInteger inFlightCommits = new AtomicInteger(); // 변경했지만 아직 이벤트 반영이 끝나지 않은 트랜잭션 수
+	private final Object inFlightKey = new Object(); // 트랜잭션을 이미 세었는지
+	// 이벤트 반영끼리는 동시에(read lock), 대사 결과로 바꿔 끼울 때만 배타적으로(write lock)
+	private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+	public TeamStatsReadModel(JPAQueryFactory queryFactory, PlatformTransactionManager transactionManager,
+		@Value("${querydsl.team-stats.reconcile-retry-backoff:100ms}") Duration retryBackoff,
+		@Value("${querydsl.team-stats.reconcile-retry-max-backoff:5s}") Duration maxRetryBackoff,
+		@Value("${querydsl.team-stats.reconcile-max-attempts:20}") int maxAttempts) {
+		this.queryFactory = queryFactory;
+		this.retryBackoffMillis = retryBackoff.toMillis();
+		this.maxRetryBackoffMillis = maxRetryBackoff.toMillis();
+		this.maxAttempts = maxAttempts;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+		// 실행 중 하나 + 대기 하나. 벌크 chunk 마다 요청이 와도 그 이상은 버린다.
+		this.reconcileExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(1), new CustomizableThreadFactory("team-stats-reconcile-"),
+			new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	/**
+	 * @return 회원이 있는 팀의 통계. 팀 이름순
+	 */
+	public List<TeamStatsDto> getStats() {
+		Stats current = stats;
+		List<TeamStatsDto> result = new ArrayList<>();
+		current.teams.forEach((teamId, accumulator) -> {
+			TeamStatsDto dto = accumulator.toDto(teamId, current.teamNames.get(teamId));
+			if (dto != null) {
+				result.add(dto);
+			}
+		});
+		result.sort(Comparator.comparing(TeamStatsDto::getTeamName, Comparator.nullsLast(Comparator.naturalOrder()))
+			.thenComparing(TeamStatsDto::getTeamId));
+		return result;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void init() {
+		if (!reconcile()) {
+			requestReconcile();
+		}
+	}
+
+	@Scheduled(initialDelayString = "${querydsl.team-stats.reconcile-interval:PT5M}",
+		fixedDelayString = "${querydsl.team-stats.reconcile-interval:PT5M}")
+	public void scheduledReconcile() {
+		requestReconcile();
+	}
+
+	/**
+	 * 회원/팀을 바꾼 트랜잭션을 끝날 때까지(커밋 후 AFTER_COMMIT 이벤트 반영까지) 진행 중으로 센다.
+	 * 커밋할 때 flush 하면 beforeCommit 은 이미 지나 있으므로 처음 변경을 flush 한 시점부터 센다.
+	 */
+	@EventListener
+	public void onEntityChanged(EntityChangedEvent event) {
+		if (!(event.isAbout(Member.class) || event.isAbout(Team.class))
+			|| !TransactionSynchronizationManager.isSynchronizationActive()
+			|| !TransactionSynchronizationManager.isActualTransactionActive()
+			|| TransactionSynchronizationManager.hasResource(inFlightKey)) {
+			return;
+		}
+		TransactionSynchronizationManager.bindResource(inFlightKey, Boolean.TRUE);
+		inFlightCommits.incrementAndGet();
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) { // 모든 afterCommit(onEntityCommitted) 다음에 호출된다. 롤백이어도 호출
+				TransactionSynchronizationManager.unbindResourceIfPossible(inFlightKey);
+				inFlightCommits.decrementAndGet();
+			}
+		});
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void onEntityCommitted(EntityChangedEvent event) {
+		if (!event.isAbout(Member.class) && !event.isAbout(Team.class)) {
+			return;
+		}
+		if (event.getType() == EntityChangedEvent.Type.BULK) {
+			requestReconcile();
+			return;
+		}
+
+		swapLock.readLock().lock();
+		try {
+			appliedEvents.incrementAndGet();
+			apply(stats, event);
+		} finally {
+			swapLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * DB 에서 다시 집계해서 바꿔 끼운다.
+	 * @return 집계 도중에 반영된 이벤트나 진행 중인 트랜잭션이 있어서 버렸으면 false
+	 */
+	public boolean reconcile() {
+		long before = appliedEvents.get();
+		if (inFlightCommits.get() > 0) {
+			log.debug("team stats reconcile skipped. {} transactions are in flight", inFlightCommits.get());
+			return false;
+		}
+		// 이벤트로 반영한 값과 맞춰야 하므로 아직 복제되지 않았을 수 있는 replica 가 아니라 primary 에서 읽는다.
+		Stats loaded = ReplicaRoutingDataSource.forcePrimary(() -> transactionTemplate.execute(status -> load()));
+
+		swapLock.writeLock().lock();
+		try {
+			if (appliedEvents.get() != before || inFlightCommits.get() > 0) {
+				log.debug("team stats reconcile discarded. events were applied or in flight while loading");
+				return false;
+			}
+			stats = loaded;
+			return true;
+		} finally {
+			swapLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 대사 스레드에서 성공할 때까지(최대 maxAttempts 번) 대사한다. 실행 중 하나 + 대기 하나까지만 받고 나머지는 버린다.
+	 * (대기 중인 대사가 이후의 변경까지 집계하므로 버려도 된다)
+	 */
+	private void requestReconcile() {
+		reconcileExecutor.execute(this::reconcileUntilApplied);
+	}
+
+	private void reconcileUntilApplied() {
+		long backoff = retryBackoffMillis;
+		for (int attempt = 1; !Thread.currentThread().isInterrupted(); attempt++) {
+			try {
+				if (reconcile()) {
+					return;
+				}
+			} catch (RuntimeException e) {
+				log.warn("team stats reconcile failed. retry after {}ms", backoff, e);
+			}
+			if (attempt >= maxAttempts) {
+				log.warn("team stats reconcile gave up after {} attempts. stats may be stale until the next reconcile",
+					attempt);
+				return;
+			}
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			backoff = Math.min(backoff * 2, maxRetryBackoffMillis);
+		}
+	}
+
+	private Stats load() {
+		Stats loaded = new Stats();
+		for (Tuple row : queryFactory.select(team.id, team.name).from(team).fetch()) {
+			loaded.teamNames.put(row.get(team.id), nullToEmpty(row.get(team.name)));
+		}
+
+		List<Tuple> rows = queryFactory
+			.select(member.team.id, member.age, member.count())
+			.from(member)
+			.where(member.team.isNotNull())
+			.groupBy(member.team.id, member.age)
+			.fetch();
+		for (Tuple row : rows) {
+			loaded.add(row.get(member.team.id), row.get(member.age), row.get(member.count()));
+		}
+		return loaded;
+	}
+
+	private void apply(Stats target, EntityChangedEvent event) {
+		if (event.isAbout(Team.class)) {
+			Long teamId = (Long) event.getId();
+			if (event.getType() == EntityChangedEvent.Type.DELETE) {
+				target.teamNames.remove(teamId);
+			} else {
+				target.teamNames.put(teamId, nullToEmpty((String) event.getValue("name")));
+			}
+			return;
+		}
+
+		switch (event.getType()) {
+			case INSERT:
+				target.add(teamIdOf(event.getValue("team")), (Integer) event.getValue("age"), 1);
+				break;
+			case UPDATE:
+				if (event.getOldState() == null) { // detached 엔티티 merge 등 변경 전 값을 모르면 대사
+					requestReconcile();
+					return;
+				}
+				target.add(teamIdOf(event.getOldValue("team")), (Integer) event.getOldValue("age"), -1);
+				target.add(teamIdOf(event.getValue("team")), (Integer) event.getValue("age"), 1);
+				break;
+			case DELETE:
+				target.add(teamIdOf(event.getOldValue("team")), (Integer) event.getOldValue("age"), -1);
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * 커밋 후에는 세션이 닫혀있을 수 있으므로 프록시를 초기화하지 않고 id 를 꺼낸다.
+	 */
+	private static Long teamIdOf(Object value) {
+		if (value instanceof HibernateProxy) {
+			return (Long) ((HibernateProxy) value).getHibernateLazyInitializer().getIdentifier();
+		}
+		return value instanceof Team ? ((Team) value).getId() : null;
+	}
+
+	private static String nullToEmpty(String value) {
+		return value != null ? value : "";
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		reconcileExecutor.shutdownNow();
+	}
+
+	private static class Stats {
+		private final Map<Long, TeamAccumulator> teams = new ConcurrentHashMap<>();
+		private final Map<Long, String> teamNames = new ConcurrentHashMap<>();
+
+		private void add(Long teamId, Integer age, long delta) {
+			if (teamId == null || age == null) { // 팀이 없는 회원은 집계하지 않는다. (team join)
+				return;
+			}
+			teams.computeIfAbsent(teamId, key -> new TeamAccumulator()).add(age, delta);
+		}
+	}
+
+	private static class TeamAccumulator {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final ConcurrentSkipListMap<Integer, LongAdder> countByAge = new ConcurrentSkipListMap<>();
+
+		private void add(int age, long delta) {
+			countByAge.computeIfAbsent(age, key -> new LongAdder()).add(delta);
+			count.add(delta);
+			sum.add(age * delta);
+		}
+
+		/**
+		 * @return 회원이 없으면 null
+		 */
+		private TeamStatsDto toDto(Long teamId, String teamName) {
+			long memberCount = count.sum();
+			if (memberCount <= 0) {
+				return null;
+			}
+			Integer min = null;
+			Integer max = null;
+			for (Map.Entry<Integer, LongAdder> entry : countByAge.entrySet()) { // 나이순. 0명인 나이는 건너뛴다.
+				if (entry.getValue().sum() > 0) {
+					if (min == null) {
+						min = entry.getKey();
+					}
+					max = entry.getKey();
+				}
+			}
+			if (min == null) { // 갱신 도중
+				return null;
+			}
+			return new TeamStatsDto(teamId, teamName, memberCount, sum.sum(), max, min);
+		}
+	}
+}
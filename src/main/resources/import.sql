@@ -0,0 +1,2 @@
+-- DataVersion 이 커밋마다 update 하는 row. 커밋 경로에서 insert 하지 않도록 스키마를 만들 때 넣어둔다.
+insert into data_version (id, version) values (1, 0);
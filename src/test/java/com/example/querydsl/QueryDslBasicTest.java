@@ -22,6 +22,7 @@ import com.example.querydsl.dto.UserDto;
 import com.example.querydsl.entity.Member;
 import com.example.querydsl.entity.QMember;
 import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.support.FastProjections;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.QueryResults;
 import com.querydsl.core.Tuple;
@@ -675,6 +676,56 @@ public class QueryDslBasicTest {
 		}
 	}
 
+	/**
+	 * 프로젝션 - FastProjections 사용. 생성자를 캐싱된 MethodHandle 로 호출한다.
+	 * @throws Exception
+	 */
+	@Test
+	@Transactional
+	public void findDtoByFastProjections_생성자() throws Exception {
+		List<MemberDto> result = queryFactory
+			.select(FastProjections.constructor(MemberDto.class, member.username, member.age))
+			.from(member)
+			.fetch();
+
+		assertThat(result).extracting("username", "age")
+			.containsExactly(tuple("member1", 10), tuple("member2", 20), tuple("member3", 30), tuple("member4", 40));
+
+		List<UserDto> users = queryFactory
+			.select(FastProjections.constructor(UserDto.class, member.username, member.age))
+			.from(member)
+			.where(member.username.eq("member1"))
+			.fetch();
+
+		assertThat(users).containsExactly(new UserDto("member1", 10));
+	}
+
+	/**
+	 * 프로젝션 - FastProjections 사용. 기본 생성자로 만들고 setter(없으면 필드)에 넣는다. 별칭은 as() 로.
+	 * @throws Exception
+	 */
+	@Test
+	@Transactional
+	public void findDtoByFastProjections_필드() throws Exception {
+		List<MemberDto> result = queryFactory
+			.select(FastProjections.fields(MemberDto.class, member.username, member.age))
+			.from(member)
+			.where(member.username.eq("member2"))
+			.fetch();
+
+		assertThat(result).extracting("username", "age").containsExactly(tuple("member2", 20));
+
+		// 같은 DTO 타입, 같은 필드면 캐싱된 생성기를 다시 사용한다.
+		List<MemberDto> aliased = queryFactory
+			.select(FastProjections.fields(MemberDto.class, team.name.as("username"), member.age))
+			.from(member)
+			.join(member.team, team)
+			.where(member.username.eq("member3"))
+			.fetch();
+
+		assertThat(aliased).extracting("username", "age").containsExactly(tuple("teamB", 30));
+	}
+
 	/**
 	 * 동적 쿼리 사용 - BooleanBuilder
 	 * @throws Exception
@@ -0,0 +1,60 @@
+package com.example.querydsl.controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * 잘못된 검색 파라미터는 500 이 아니라 400 으로 응답한다.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class MemberControllerBadRequestTest {
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Test
+	public void unsupportedSort() throws Exception {
+		mockMvc.perform(get("/v3/members").param("sort", "foo"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/v3/members/slice").param("sort", "foo,desc"))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void invalidCursor() throws Exception {
+		String notBase64 = "%%%";
+		String notNumber = Base64.getUrlEncoder().encodeToString("abc".getBytes(StandardCharsets.UTF_8));
+		String idCursor = Base64.getUrlEncoder().encodeToString("10".getBytes(StandardCharsets.UTF_8));
+
+		mockMvc.perform(get("/v4/members").param("cursor", notBase64))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/v4/members").param("cursor", notNumber))
+			.andExpect(status().isBadRequest());
+		// id 순 cursor 로 나이순 조회
+		mockMvc.perform(get("/v4/members").param("cursor", idCursor).param("orderByAge", "true"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/v4/members").param("cursor", idCursor))
+			.andExpect(status().isOk());
+	}
+
+	@Test
+	public void unsupportedSort_async() throws Exception {
+		MvcResult result = mockMvc.perform(get("/v3/members/async").param("sort", "foo"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+
+		mockMvc.perform(asyncDispatch(result))
+			.andExpect(status().isBadRequest());
+	}
+}
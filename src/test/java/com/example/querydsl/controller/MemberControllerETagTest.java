@@ -0,0 +1,89 @@
+package com.example.querydsl.controller;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.event.DataVersion;
+import com.example.querydsl.repository.MemberRepository;
+
+/**
+ * 다른 트랜잭션(요청)에서 보이도록 데이터를 커밋하고 끝나면 지운다.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class MemberControllerETagTest {
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	MemberRepository memberRepository;
+
+	@Autowired
+	DataVersion dataVersion;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Test
+	public void notModified() throws Exception {
+		String etag = mockMvc.perform(get("/v3/members"))
+			.andExpect(status().isOk())
+			.andExpect(header().exists(HttpHeaders.ETAG))
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		// 데이터가 그대로면 쿼리 없이 304
+		mockMvc.perform(get("/v3/members").header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect(status().isNotModified());
+		mockMvc.perform(get("/v2/members").header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect(status().isNotModified());
+		mockMvc.perform(get("/v1/members").header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect(status().isNotModified());
+
+		assertThat(etag).isEqualTo("\"" + dataVersion.current() + "\""); // DB 의 data_version
+
+		long version = dataVersion.current();
+		Member member = memberRepository.save(Member.builder().username("etagMember").age(10).build());
+		try {
+			assertThat(dataVersion.current()).isGreaterThan(version);
+
+			// 바뀌었으면 새 ETag 로 200
+			String newEtag = mockMvc.perform(get("/v3/members").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+			assertThat(newEtag).isNotEqualTo(etag);
+		} finally {
+			memberRepository.delete(member);
+		}
+	}
+
+	/**
+	 * 다른 인스턴스가 커밋한 변경도 같은 data_version 을 올리므로 ETag 가 바뀐다.
+	 */
+	@Test
+	public void changedByOtherInstance() throws Exception {
+		String etag = mockMvc.perform(get("/v2/members"))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		// row 는 import.sql 로 스키마와 같이 만들어져 있다.
+		assertThat(jdbcTemplate.update("update data_version set version = version + 1")).isEqualTo(1);
+
+		String newEtag = mockMvc.perform(get("/v2/members").header(HttpHeaders.IF_NONE_MATCH, etag))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(newEtag).isNotEqualTo(etag);
+		mockMvc.perform(get("/v2/members").header(HttpHeaders.IF_NONE_MATCH, newEtag))
+			.andExpect(status().isNotModified());
+	}
+}
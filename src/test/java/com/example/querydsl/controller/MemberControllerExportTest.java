@@ -0,0 +1,114 @@
+package com.example.querydsl.controller;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StreamUtils;
+
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+
+/**
+ * MockMvc 는 테스트와 같은 스레드에서 실행되므로 searchStream 이 테스트 트랜잭션에 참여해서 커밋하지 않은 데이터를 읽는다.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+class MemberControllerExportTest {
+
+	private static final String TEAM_NAME = "export,Team";
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	EntityManager em;
+
+	Member quoted;
+	Member plain;
+
+	@BeforeEach
+	public void insertData() {
+		Team team = Team.builder().name(TEAM_NAME).build();
+		em.persist(team);
+		quoted = Member.builder().username("a \"quoted\", name\nline2").age(20).team(team).build();
+		plain = Member.builder().username("plain").age(30).team(team).build();
+		em.persist(quoted);
+		em.persist(plain);
+	}
+
+	@Test
+	public void exportCsv_escape() throws Exception {
+		String csv = mockMvc.perform(get("/members/export").param("teamName", TEAM_NAME))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"members.csv\""))
+			.andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+			.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+		assertCsv(csv);
+	}
+
+	@Test
+	public void exportCsv_gzip() throws Exception {
+		byte[] body = mockMvc.perform(get("/members/export").param("teamName", TEAM_NAME).param("gzip", "true"))
+			.andExpect(status().isOk())
+			.andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+			.andReturn().getResponse().getContentAsByteArray();
+
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+			assertCsv(StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void export_unsupportedFormat() throws Exception {
+		mockMvc.perform(get("/members/export").param("format", "json"))
+			.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/members/export").param("format", "xml"))
+			.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	public void v1_usernameContains() throws Exception {
+		String json = mockMvc.perform(get("/v1/members").param("teamName", TEAM_NAME).param("usernameContains", "lain"))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+		assertThat(json).contains("\"memberId\":" + plain.getId() + ",")
+			.doesNotContain("\"memberId\":" + quoted.getId() + ",");
+
+		String none = mockMvc.perform(get("/v1/members").param("teamName", TEAM_NAME).param("usernameContains", "nothing"))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+		assertThat(none).doesNotContain("\"memberId\":" + plain.getId() + ",", "\"memberId\":" + quoted.getId() + ",");
+	}
+
+	/**
+	 * searchStream 은 정렬하지 않으므로 행 순서는 비교하지 않는다.
+	 */
+	private void assertCsv(String csv) {
+		Long teamId = quoted.getTeam().getId();
+		String header = "memberId,username,age,teamId,teamName\r\n";
+		String quotedRow = quoted.getId() + ",\"a \"\"quoted\"\", name\nline2\",20," + teamId + ",\"export,Team\"\r\n";
+		String plainRow = plain.getId() + ",plain,30," + teamId + ",\"export,Team\"\r\n";
+
+		assertThat(csv).startsWith(header).contains(quotedRow, plainRow);
+		assertThat(csv).hasSize(header.length() + quotedRow.length() + plainRow.length());
+	}
+}
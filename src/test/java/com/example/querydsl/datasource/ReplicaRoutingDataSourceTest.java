@@ -0,0 +1,95 @@
+package com.example.querydsl.datasource;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * 메모리 H2 두 개를 primary, replica 로 사용한다. replica 의 복제 지연은 replica_lag 테이블 값으로 흉내낸다.
+ */
+class ReplicaRoutingDataSourceTest {
+
+	DataSource primary = new DriverManagerDataSource("jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1", "sa", "");
+	DataSource replica = new DriverManagerDataSource("jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1", "sa", "");
+	MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	ReplicaLagMonitor lagMonitor;
+	JdbcTemplate jdbcTemplate;
+	TransactionTemplate writeTx;
+	TransactionTemplate readOnlyTx;
+
+	@BeforeEach
+	public void before() {
+		new JdbcTemplate(replica).execute("create table replica_lag (lag int)");
+		new JdbcTemplate(replica).update("insert into replica_lag values (0)");
+
+		lagMonitor = new ReplicaLagMonitor(replica, "select lag from replica_lag", Duration.ofSeconds(5),
+			Duration.ofSeconds(1));
+		lagMonitor.check();
+
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replica, lagMonitor, meterRegistry);
+		routing.afterPropertiesSet();
+		DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+		writeTx = new TransactionTemplate(transactionManager);
+		readOnlyTx = new TransactionTemplate(transactionManager);
+		readOnlyTx.setReadOnly(true);
+	}
+
+	@AfterEach
+	public void after() {
+		new JdbcTemplate(replica).execute("drop table replica_lag");
+	}
+
+	@Test
+	public void route() throws Exception {
+		double primaryCount = routeCount("primary"); // LazyConnectionDataSourceProxy 가 생성될 때 기본 설정 확인용으로 얻은 커넥션
+
+		assertThat(readOnlyTx.execute(status -> currentDatabase())).isEqualTo("REPLICA");
+		assertThat(writeTx.execute(status -> currentDatabase())).isEqualTo("PRIMARY");
+		assertThat(currentDatabase()).isEqualTo("PRIMARY"); // 트랜잭션 밖
+
+		assertThat(routeCount("replica")).isEqualTo(1);
+		assertThat(routeCount("primary")).isEqualTo(primaryCount + 2);
+	}
+
+	@Test
+	public void fallbackToPrimary_whenReplicaLags() throws Exception {
+		new JdbcTemplate(replica).update("update replica_lag set lag = 10");
+		lagMonitor.check();
+
+		assertThat(lagMonitor.isAvailable()).isFalse();
+		assertThat(readOnlyTx.execute(status -> currentDatabase())).isEqualTo("PRIMARY");
+		assertThat(meterRegistry.counter("querydsl.datasource.replica.fallback").count()).isEqualTo(1);
+		assertThat(meterRegistry.get("querydsl.datasource.replica.lag").gauge().value()).isEqualTo(10);
+
+		// 따라잡으면 다시 replica 로
+		new JdbcTemplate(replica).update("update replica_lag set lag = 0");
+		lagMonitor.check();
+		assertThat(readOnlyTx.execute(status -> currentDatabase())).isEqualTo("REPLICA");
+	}
+
+	private String currentDatabase() {
+		return jdbcTemplate.queryForObject("select database()", String.class);
+	}
+
+	private double routeCount(String route) {
+		return meterRegistry.get("querydsl.datasource.route").tag("route", route).counter().count();
+	}
+}
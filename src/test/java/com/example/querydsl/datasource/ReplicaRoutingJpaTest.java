@@ -0,0 +1,217 @@
+package com.example.querydsl.datasource;
+
+import static com.example.querydsl.entity.QMember.*;
+import static com.example.querydsl.entity.QTeam.*;
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.TeamStatsDto;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.MemberRepository;
+import com.example.querydsl.repository.MemberTestRepository;
+import com.example.querydsl.repository.support.ConcurrentCountExecutor;
+import com.example.querydsl.repository.support.SearchCountCache;
+import com.example.querydsl.search.UsernameSuggester;
+import com.example.querydsl.search.UsernameTrigramIndex;
+import com.example.querydsl.stats.TeamStatsReadModel;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+/**
+ * RoutingDataSourceConfig 로 메모리 H2 두 개를 primary, replica 로 띄우고 JPA(JpaTransactionManager, JPAQueryFactory) 경로를 확인한다.
+ * 복제는 하지 않으므로 primary 에 커밋한 데이터는 replica 에 없고, replica 에만 직접 넣은 데이터가 있다. (복제 지연 상황)
+ * 스키마는 hibernate 가 primary 에 만든 것을 replica 로 복사한다.
+ */
+@SpringBootTest(properties = {
+	"querydsl.datasource.routing.enabled=true",
+	"spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+	"querydsl.datasource.routing.replica.url=jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1",
+	"querydsl.datasource.routing.replica.username=sa",
+	"querydsl.datasource.routing.replica.password=",
+	"querydsl.datasource.routing.replica.driver-class-name=org.h2.Driver",
+	"querydsl.concurrent-count.enabled=true"
+})
+class ReplicaRoutingJpaTest {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	JPAQueryFactory queryFactory;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	MemberRepository memberRepository;
+
+	@Autowired
+	MemberTestRepository memberTestRepository;
+
+	@Autowired
+	ConcurrentCountExecutor concurrentCountExecutor;
+
+	@Autowired
+	ApplicationContext applicationContext;
+
+	@Autowired
+	SearchCountCache searchCountCache;
+
+	@Autowired
+	ReplicaConsistency replicaConsistency;
+
+	@Autowired
+	TeamStatsReadModel teamStatsReadModel;
+
+	@Autowired
+	UsernameSuggester usernameSuggester;
+
+	@Autowired
+	UsernameTrigramIndex usernameIndex;
+
+	@Autowired
+	@Qualifier("primaryDataSource")
+	DataSource primaryDataSource;
+
+	@Autowired
+	@Qualifier("replicaDataSource")
+	DataSource replicaDataSource;
+
+	TransactionTemplate writeTx;
+	TransactionTemplate readOnlyTx;
+
+	@BeforeEach
+	public void before() {
+		JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+		replica.execute("drop all objects");
+		for (String sql : new JdbcTemplate(primaryDataSource).queryForList("script nodata", String.class)) {
+			if (!sql.startsWith("--")) {
+				replica.execute(sql);
+			}
+		}
+		replica.update("insert into team (team_id, name) values (1000, 'replicaTeam')");
+		replica.update("insert into member (member_id, age, username, team_id) values (1000, 10, 'replicaMember', 1000)");
+
+		writeTx = new TransactionTemplate(transactionManager);
+		readOnlyTx = new TransactionTemplate(transactionManager);
+		readOnlyTx.setReadOnly(true);
+
+		writeTx.execute(status -> {
+			Team primaryTeam = Team.builder().name("primaryTeam").build();
+			em.persist(primaryTeam);
+			em.persist(Member.builder().username("primaryMember").age(20).team(primaryTeam).build());
+			return null;
+		});
+	}
+
+	@AfterEach
+	public void after() {
+		writeTx.execute(status -> {
+			queryFactory.delete(member).execute();
+			queryFactory.delete(team).execute();
+			return null;
+		});
+		new JdbcTemplate(replicaDataSource).execute("drop all objects");
+	}
+
+	@Test
+	public void route() throws Exception {
+		assertThat(transactionManager).isInstanceOf(JpaTransactionManager.class);
+
+		assertThat(readOnlyTx.execute(status -> usernames())).containsExactly("replicaMember");
+		assertThat(writeTx.execute(status -> usernames())).containsExactly("primaryMember");
+
+		// @Transactional(readOnly = true) 리포지토리 메서드
+		assertThat(memberRepository.search(new MemberSearchCondition())).extracting("username")
+			.containsExactly("replicaMember");
+	}
+
+	/**
+	 * open-in-view 면 요청의 첫 커넥션을 끝까지 쓰므로 라우팅을 켜면 끈다. (RoutingEnvironmentPostProcessor)
+	 */
+	@Test
+	public void openInViewDisabled() throws Exception {
+		assertThat(applicationContext.getEnvironment().getProperty("spring.jpa.open-in-view")).isEqualTo("false");
+		assertThat(applicationContext.getBeanNamesForType(OpenEntityManagerInViewInterceptor.class)).isEmpty();
+	}
+
+	/**
+	 * 다른 스레드에서 실행하는 count 도 content 와 같은 곳에서 조회한다.
+	 */
+	@Test
+	public void concurrentCount_sameRouteAsContent() throws Exception {
+		new JdbcTemplate(replicaDataSource)
+			.update("insert into member (member_id, age, username, team_id) values (1001, 11, 'replicaMember2', 1000)");
+		long concurrentCount = concurrentCountExecutor.getConcurrentCount();
+
+		PageRequest firstById = PageRequest.of(0, 1, Sort.by("id"));
+		Page<Member> replicaPage = memberTestRepository.applyPagination2(new MemberSearchCondition(), firstById);
+		assertThat(replicaPage.getContent()).extracting("username").containsExactly("replicaMember");
+		assertThat(replicaPage.getTotalElements()).isEqualTo(2);
+
+		Page<Member> primaryPage = replicaConsistency.readLatest(
+			() -> memberTestRepository.applyPagination2(new MemberSearchCondition(), firstById));
+		assertThat(primaryPage.getContent()).extracting("username").containsExactly("primaryMember");
+		assertThat(primaryPage.getTotalElements()).isEqualTo(1);
+
+		assertThat(concurrentCountExecutor.getConcurrentCount()).isEqualTo(concurrentCount + 2);
+	}
+
+	@Test
+	public void forcePrimary() throws Exception {
+		assertThat(ReplicaRoutingDataSource.forcePrimary(() -> readOnlyTx.execute(status -> usernames())))
+			.containsExactly("primaryMember");
+		assertThat(replicaConsistency.readLatest(() -> memberRepository.search(new MemberSearchCondition())))
+			.extracting("username")
+			.containsExactly("primaryMember"); // 방금 커밋했으므로 primary
+	}
+
+	@Test
+	public void readModelsLoadFromPrimary() throws Exception {
+		assertThat(teamStatsReadModel.reconcile()).isTrue();
+		assertThat(teamStatsReadModel.getStats()).extracting(TeamStatsDto::getTeamName).containsExactly("primaryTeam");
+
+		usernameSuggester.build();
+		assertThat(usernameSuggester.suggest("primary", 10, null)).extracting("username").containsExactly("primaryMember");
+		assertThat(usernameSuggester.suggest("replica", 10, null)).isEmpty();
+
+		usernameIndex.build();
+		assertThat(usernameIndex.candidates("replicaMem")).isEmpty();
+		assertThat(usernameIndex.candidates("primaryMem")).isNotEmpty();
+	}
+
+	@Test
+	public void countCache_skipsStaleReplica() throws Exception {
+		MemberSearchCondition condition = new MemberSearchCondition();
+		assertThat(replicaConsistency.isReplicaStale()).isTrue(); // before 에서 커밋
+
+		assertThat(memberRepository.searchPageComplex(condition, PageRequest.of(0, 1)).getTotalElements()).isEqualTo(1);
+		assertThat(searchCountCache.contains(SearchCountCache.key("MemberRepositoryImpl.searchPageComplex",
+			condition.normalize()))).isFalse();
+	}
+
+	private List<String> usernames() {
+		return queryFactory.select(member.username).from(member).orderBy(member.id.asc()).fetch();
+	}
+}
@@ -0,0 +1,84 @@
+package com.example.querydsl.repository;
+
+import static com.example.querydsl.entity.QMember.*;
+import static com.example.querydsl.entity.QTeam.*;
+import static org.assertj.core.api.Assertions.*;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.support.ConcurrentCountExecutor;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+/**
+ * count 쿼리를 별도 커넥션에서 실행하므로 데이터를 커밋해야 보인다. 그래서 @Transactional 을 쓰지 않고 직접 정리한다.
+ */
+@SpringBootTest(properties = "querydsl.concurrent-count.enabled=true")
+class ConcurrentCountTest {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	JPAQueryFactory queryFactory;
+
+	@Autowired
+	MemberTestRepository repository;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	ConcurrentCountExecutor concurrentCountExecutor;
+
+	@Test
+	public void applyPagination_concurrentCount() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.execute(status -> {
+			Team teamA = Team.builder().name("teamA").build();
+			em.persist(teamA);
+			for (int i = 0; i < 10; i++) {
+				em.persist(Member.builder().username("member" + i).age(i * 10).team(teamA).build());
+			}
+			return null;
+		});
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setAgeGoe(30);
+
+		long concurrentCount = concurrentCountExecutor.getConcurrentCount();
+		transactionTemplate.setReadOnly(true);
+		Page<Member> page = transactionTemplate.execute(status ->
+			repository.applyPagination2(condition, PageRequest.of(0, 3)));
+
+		assertThat(page.getContent()).hasSize(3);
+		assertThat(page.getTotalElements()).isEqualTo(7);
+		assertThat(concurrentCountExecutor.getConcurrentCount()).isEqualTo(concurrentCount + 1); // concurrent-count 스레드에서 실행
+
+		// 캐시된 count 는 다시 실행하지 않는다.
+		Page<Member> next = transactionTemplate.execute(status ->
+			repository.applyPagination2(condition, PageRequest.of(1, 3)));
+		assertThat(next.getTotalElements()).isEqualTo(7);
+		assertThat(concurrentCountExecutor.getConcurrentCount()).isEqualTo(concurrentCount + 1);
+	}
+
+	@AfterEach
+	public void cleanUp() {
+		new TransactionTemplate(transactionManager).execute(status -> {
+			queryFactory.delete(member).execute();
+			queryFactory.delete(team).execute();
+			return null;
+		});
+	}
+}
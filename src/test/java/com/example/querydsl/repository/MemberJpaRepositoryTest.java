@@ -2,6 +2,7 @@ package com.example.querydsl.repository;
 
 import static org.assertj.core.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.EntityManager;
@@ -78,6 +79,20 @@ class MemberJpaRepositoryTest {
 		assertThat(result).extracting("username").containsExactly("member4");
 	}
 
+	@Test
+	@Transactional
+	public void searchStream() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setTeamName("teamB");
+
+		List<MemberTeamDto> result = new ArrayList<>();
+		memberJpaRepository.searchStream(condition, result::add);
+
+		assertThat(result).extracting("username").containsExactly("member3", "member4");
+	}
+
 	private void insertInitData() {
 		Team teamA = Team.builder().name("teamA").build();
 		Team teamB = Team.builder().name("teamB").build();
@@ -0,0 +1,111 @@
+package com.example.querydsl.repository;
+
+import static com.example.querydsl.entity.QMember.*;
+import static com.example.querydsl.entity.QTeam.*;
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.dto.MemberBulkProgress;
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+/**
+ * 벌크 update/delete 는 chunk 마다 커밋하고 트랜잭션 안에서는 호출할 수 없으므로 @Transactional 을 쓰지 않고 직접 정리한다.
+ */
+@SpringBootTest(properties = "querydsl.bulk.chunk-size=2")
+class MemberRepositoryBulkTest {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	JPAQueryFactory queryFactory;
+
+	@Autowired
+	MemberRepository memberRepository;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	TransactionTemplate transactionTemplate;
+
+	@BeforeEach
+	public void insertInitData() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.execute(status -> {
+			Team teamA = Team.builder().name("bulkTeamA").build();
+			Team teamB = Team.builder().name("bulkTeamB").build();
+			em.persist(teamA);
+			em.persist(teamB);
+
+			em.persist(Member.builder().username("member1").age(10).team(teamA).build());
+			em.persist(Member.builder().username("member2").age(20).team(teamA).build());
+			em.persist(Member.builder().username("member3").age(30).team(teamB).build());
+			em.persist(Member.builder().username("member4").age(40).team(teamB).build());
+			return null;
+		});
+	}
+
+	@AfterEach
+	public void cleanUp() {
+		transactionTemplate.execute(status -> {
+			queryFactory.delete(member)
+				.where(member.team.id.in(queryFactory.select(team.id).from(team).where(team.name.startsWith("bulkTeam"))))
+				.execute();
+			queryFactory.delete(team).where(team.name.startsWith("bulkTeam")).execute();
+			return null;
+		});
+	}
+
+	@Test
+	public void bulkUpdateAge() throws Exception {
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setAgeGoe(20);
+		List<MemberBulkProgress> progress = new ArrayList<>();
+
+		long affected = memberRepository.bulkUpdateAge(condition, 1, progress::add);
+
+		assertThat(affected).isEqualTo(3);
+		assertThat(progress).extracting("chunk").containsExactly(1, 2); // member2~4 를 2건씩
+		assertThat(progress).extracting("affectedRows").containsExactly(2L, 3L);
+		assertThat(memberRepository.findAll()).extracting("age").containsExactlyInAnyOrder(10, 21, 31, 41);
+	}
+
+	@Test
+	public void bulkDelete_teamName() throws Exception {
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setTeamName("bulkTeamB");
+
+		long affected = memberRepository.bulkDelete(condition, progress -> { });
+
+		assertThat(affected).isEqualTo(2);
+		assertThat(memberRepository.findAll()).extracting("username").containsExactlyInAnyOrder("member1", "member2");
+	}
+
+	/**
+	 * 호출한 트랜잭션에 참여하면 chunk 마다 커밋되지 않고, 새로 시작하면 호출한 쪽의 락과 flush 하지 않은 변경 때문에 꼬인다.
+	 */
+	@Test
+	public void bulkUpdateAge_insideTransaction() throws Exception {
+		assertThatThrownBy(() -> transactionTemplate.execute(
+			status -> memberRepository.bulkUpdateAge(new MemberSearchCondition(), 1, progress -> { })))
+			.isInstanceOf(InvalidDataAccessApiUsageException.class) // 리포지토리 프록시가 IllegalStateException 을 변환
+			.hasCauseInstanceOf(IllegalStateException.class);
+		assertThat(memberRepository.findAll()).extracting("age").containsExactlyInAnyOrder(10, 20, 30, 40);
+	}
+}
@@ -0,0 +1,135 @@
+package com.example.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.querydsl.dto.InvalidSearchParameterException;
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.MemberTeamDto;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.support.QueryShapeCache;
+import com.example.querydsl.sql.StatementScopeExtension;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * searchPageComplex 가 offset 2 부터 deferred join 으로 바뀌도록 기준을 낮춘다.
+ */
+@SpringBootTest(properties = "querydsl.pagination.deferred-join-min-offset=2")
+@Transactional
+@ExtendWith(StatementScopeExtension.class)
+class MemberRepositoryDeferredJoinTest {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	MemberRepository memberRepository;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	QueryShapeCache queryShapeCache;
+
+	MemberSearchCondition condition = new MemberSearchCondition();
+
+	@BeforeEach
+	public void insertData() {
+		Team teamA = Team.builder().name("teamA").build();
+		Team teamB = Team.builder().name("teamB").build();
+		em.persist(teamA);
+		em.persist(teamB);
+
+		em.persist(Member.builder().username("member1").age(10).team(teamA).build());
+		em.persist(Member.builder().username("member2").age(20).team(teamA).build());
+		em.persist(Member.builder().username("member3").age(30).team(teamB).build());
+		em.persist(Member.builder().username("member4").age(40).team(teamB).build());
+		em.persist(Member.builder().username("member5").age(40).build());
+	}
+
+	@Test
+	public void searchPageComplex_switchToDeferredJoin() throws Exception {
+		Sort byAgeDesc = Sort.by(Sort.Direction.DESC, "age");
+
+		double deferred = deferredJoinCount();
+		Page<MemberTeamDto> first = memberRepository.searchPageComplex(condition, PageRequest.of(0, 2, byAgeDesc));
+		assertThat(deferredJoinCount()).isEqualTo(deferred);
+
+		Page<MemberTeamDto> second = memberRepository.searchPageComplex(condition, PageRequest.of(1, 2, byAgeDesc));
+		Page<MemberTeamDto> third = memberRepository.searchPageComplex(condition, PageRequest.of(2, 2, byAgeDesc));
+		assertThat(deferredJoinCount()).isEqualTo(deferred + 2); // offset 2 부터 deferred join
+
+		// 나이가 같으면 id 순. 페이지 사이에 중복/누락이 없다.
+		assertThat(first.getContent()).extracting("username").containsExactly("member4", "member5");
+		assertThat(second.getContent()).extracting("username").containsExactly("member3", "member2");
+		assertThat(third.getContent()).extracting("username").containsExactly("member1");
+		assertThat(third.getTotalElements()).isEqualTo(5);
+	}
+
+	@Test
+	public void searchPageDeferredJoin_sortByTeam() throws Exception {
+		Sort byTeamName = Sort.by(Sort.Order.desc("teamName").nullsLast());
+
+		// id 쿼리에도 team join 을 넣어서 정렬한다.
+		Page<MemberTeamDto> deferred = memberRepository.searchPageDeferredJoin(condition, PageRequest.of(0, 5, byTeamName));
+		Page<MemberTeamDto> complex = memberRepository.searchPageComplex(condition, PageRequest.of(0, 5, byTeamName));
+
+		assertThat(deferred.getContent()).extracting("username")
+			.containsExactly("member3", "member4", "member1", "member2", "member5");
+		assertThat(deferred.getContent()).usingFieldByFieldElementComparator()
+			.containsExactlyElementsOf(complex.getContent());
+	}
+
+	@Test
+	public void unsupportedSort() throws Exception {
+		assertThatThrownBy(() -> memberRepository.searchPageComplex(condition,
+			PageRequest.of(1, 2, Sort.by("password"))))
+			.isInstanceOf(InvalidSearchParameterException.class);
+	}
+
+	@Test
+	public void normalizeSort() throws Exception {
+		memberRepository.searchPageComplex(condition, PageRequest.of(0, 2, Sort.by("age", "memberId")));
+		long hits = queryShapeCache.getHitCount();
+
+		// 같은 속성(id, memberId)이 중복된 정렬도 같은 캐시 키를 사용한다.
+		Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition,
+			PageRequest.of(0, 2, Sort.by("age", "id", "age", "memberId")));
+
+		assertThat(queryShapeCache.getHitCount()).isEqualTo(hits + 2); // content, count
+		assertThat(page.getContent()).extracting("username").containsExactly("member1", "member2");
+	}
+
+	@Test
+	public void tooManySorts() throws Exception {
+		assertThatThrownBy(() -> memberRepository.searchPageComplex(condition,
+			PageRequest.of(0, 2, Sort.by("age", "username", "teamName", "memberId"))))
+			.isInstanceOf(InvalidSearchParameterException.class);
+	}
+
+	/**
+	 * searchPageComplex 안에서 실행된 deferred join id 쿼리 수
+	 */
+	private double deferredJoinCount() {
+		return meterRegistry.find("querydsl.query")
+			.tags("method", "MemberRepositoryImpl.searchPageComplex", "type", "content",
+				"query", "MemberRepositoryImpl.searchPageDeferredJoin.ids")
+			.timers().stream()
+			.mapToLong(Timer::count)
+			.sum();
+	}
+}
@@ -1,5 +1,15 @@
 package com.example.querydsl.repository;
 
+import static com.example.querydsl.entity.QMember.*;
+import static com.example.querydsl.entity.QTeam.*;
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 
@@ -8,11 +18,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.MemberTeamDto;
 import com.example.querydsl.entity.Member;
 import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.support.SearchCountCache;
+import com.example.querydsl.sql.SqlStatementDetector;
+import com.example.querydsl.sql.StatementScope;
+import com.querydsl.jpa.impl.JPAQueryFactory;
 
 @SpringBootTest
 class MemberRepositoryQuerydsl4RepoTest {
@@ -23,6 +41,18 @@ class MemberRepositoryQuerydsl4RepoTest {
 	@Autowired
 	EntityManager em;
 
+	@Autowired
+	SqlStatementDetector detector;
+
+	@Autowired
+	SearchCountCache searchCountCache;
+
+	@Autowired
+	JPAQueryFactory queryFactory;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
 	@Test
 	@Transactional
 	public void searchPageByApplyPage() throws Exception {
@@ -39,6 +69,164 @@ class MemberRepositoryQuerydsl4RepoTest {
 		}
 	}
 
+	@Test
+	@Transactional
+	public void applyPaginationByShape() throws Exception {
+		insertInitData();
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setAgeGoe(20);
+		PageRequest pageRequest = PageRequest.of(0, 2, Sort.Direction.DESC, "age");
+
+		Page<Member> page = repository.applyPaginationByShape(condition, pageRequest);
+
+		assertThat(page.getContent()).extracting("username").containsExactly("member4", "member3");
+		assertThat(page.getTotalElements()).isEqualTo(3);
+	}
+
+	/**
+	 * 데이터를 바꾼 트랜잭션 안의 count 는 캐싱하지 않으므로 데이터를 먼저 커밋하고 직접 정리한다.
+	 */
+	@Test
+	public void applyPagination_countCachePerQuery() throws Exception {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.execute(status -> {
+			Team countTeam = Team.builder().name("countCacheTeam").build();
+			em.persist(countTeam);
+			for (int i = 1; i <= 4; i++) {
+				em.persist(Member.builder().username("countMember" + i).age(10 * i).team(countTeam).build());
+			}
+			return null;
+		});
+
+		try {
+			MemberSearchCondition condition = new MemberSearchCondition();
+			condition.setTeamName("countCacheTeam");
+			PageRequest pageRequest = PageRequest.of(0, 1);
+			long hits = searchCountCache.stats().hitCount();
+
+			assertThat(repository.applyPagination(condition, pageRequest).getTotalElements()).isEqualTo(4);
+			assertThat(repository.applyPagination2(condition, pageRequest).getTotalElements()).isEqualTo(4);
+			assertThat(searchCountCache.stats().hitCount()).isEqualTo(hits); // 조건이 같아도 쿼리가 다르면 다른 키
+
+			assertThat(repository.applyPagination2(condition, pageRequest.next()).getTotalElements()).isEqualTo(4);
+			assertThat(searchCountCache.stats().hitCount()).isEqualTo(hits + 1);
+		} finally {
+			transactionTemplate.execute(status -> {
+				queryFactory.delete(member)
+					.where(member.team.id.in(queryFactory.select(team.id).from(team).where(team.name.eq("countCacheTeam"))))
+					.execute();
+				queryFactory.delete(team).where(team.name.eq("countCacheTeam")).execute();
+				return null;
+			});
+		}
+	}
+
+	@Test
+	@Transactional
+	public void applyPagination_noCountCacheInWritingTransaction() throws Exception {
+		insertInitData();
+		em.flush();
+		MemberSearchCondition condition = new MemberSearchCondition();
+		PageRequest pageRequest = PageRequest.of(0, 1);
+		long hits = searchCountCache.stats().hitCount();
+
+		assertThat(repository.applyPagination(condition, pageRequest).getTotalElements()).isEqualTo(4);
+		assertThat(repository.applyPagination(condition, pageRequest.next()).getTotalElements()).isEqualTo(4);
+		assertThat(searchCountCache.stats().hitCount()).isEqualTo(hits); // 커밋되지 않은 count 는 다른 트랜잭션에 보이면 안된다
+	}
+
+	@Test
+	@Transactional
+	public void applySlicing() throws Exception {
+		insertInitData();
+		MemberSearchCondition condition = new MemberSearchCondition();
+		PageRequest pageRequest = PageRequest.of(1, 2, Sort.Direction.DESC, "age");
+
+		Slice<Member> slice = repository.applySlicing(condition, pageRequest);
+
+		assertThat(slice.getContent()).extracting("username").containsExactly("member2", "member1");
+		assertThat(slice.hasNext()).isFalse();
+	}
+
+	@Test
+	@Transactional
+	public void applyPaginationWithTeam() throws Exception {
+		insertInitData();
+		em.flush();
+		em.clear();
+		MemberSearchCondition condition = new MemberSearchCondition();
+
+		try (StatementScope scope = detector.open("applyPaginationWithTeam")) {
+			Page<Member> page = repository.applyPaginationWithTeam(condition, PageRequest.of(0, 10));
+			int afterLoad = scope.getStatementCount();
+
+			assertThat(page.getContent()).extracting(member -> member.getTeam().getName())
+				.containsExactly("teamA", "teamA", "teamB", "teamB");
+			assertThat(afterLoad).isEqualTo(2); // member 조회, team in 조회 (마지막 페이지라 count 없음)
+			assertThat(scope.getStatementCount()).isEqualTo(afterLoad); // team 접근 시 select 없음
+		}
+	}
+
+	@Test
+	@Transactional
+	public void applyDeferredJoinPagination() throws Exception {
+		insertInitData();
+		em.flush();
+		em.clear();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		Page<Member> page = repository.applyDeferredJoinPagination(condition,
+			PageRequest.of(0, 3, Sort.Direction.DESC, "age"));
+
+		// id 쿼리의 정렬 순서대로, team 은 fetch join 으로 이미 로딩
+		assertThat(page.getContent()).extracting("username").containsExactly("member4", "member3", "member2");
+		assertThat(page.getContent()).extracting(member -> member.getTeam().getName())
+			.containsExactly("teamB", "teamB", "teamA");
+		assertThat(page.getTotalElements()).isEqualTo(4);
+
+		Page<Member> next = repository.applyDeferredJoinPagination(condition, page.nextPageable());
+		assertThat(next.getContent()).extracting("username").containsExactly("member1");
+	}
+
+	@Test
+	@Transactional
+	public void forEachMemberChunk() throws Exception {
+		insertInitData();
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setAgeGoe(20);
+		List<List<String>> chunks = new ArrayList<>();
+
+		repository.forEachMemberChunk(condition, 2, chunk -> chunks.add(
+			chunk.stream().map(MemberTeamDto::getUsername).collect(Collectors.toList())));
+
+		assertThat(chunks).containsExactly(
+			Arrays.asList("member2", "member3"),
+			Collections.singletonList("member4"));
+	}
+
+	@Test
+	@Transactional
+	public void updateEachMemberChunk() throws Exception {
+		insertInitData();
+		Team teamC = Team.builder().name("teamC").build();
+		em.persist(teamC);
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setAgeGoe(20);
+
+		// chunk 마다 clear 되므로 flush 하지 않으면 변경 내용이 버려진다.
+		repository.updateEachMemberChunk(condition, 2, chunk -> {
+			Team managedTeamC = em.find(Team.class, teamC.getId());
+			chunk.forEach(member -> member.changeTeam(managedTeamC));
+		});
+		em.clear();
+
+		assertThat(repository.basicSelect()).extracting("username", "team.name").containsExactlyInAnyOrder(
+			tuple("member1", "teamA"),
+			tuple("member2", "teamC"),
+			tuple("member3", "teamC"),
+			tuple("member4", "teamC"));
+	}
+
 	private void insertInitData() {
 		Team teamA = Team.builder().name("teamA").build();
 		Team teamB = Team.builder().name("teamB").build();
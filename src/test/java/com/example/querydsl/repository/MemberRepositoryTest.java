@@ -3,25 +3,37 @@ package com.example.querydsl.repository;
 import static com.example.querydsl.entity.QMember.*;
 import static org.assertj.core.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.EntityManager;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.example.querydsl.dto.MemberKeysetCondition;
+import com.example.querydsl.dto.MemberKeysetSlice;
 import com.example.querydsl.dto.MemberSearchCondition;
 import com.example.querydsl.dto.MemberTeamDto;
 import com.example.querydsl.entity.Member;
 import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.support.QueryShapeCache;
+import com.example.querydsl.search.UsernameTrigramIndex;
+import com.example.querydsl.sql.StatementScopeExtension;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 @SpringBootTest
 @Transactional
+@ExtendWith(StatementScopeExtension.class) // 테스트마다 실행된 SQL 수 검사
 class MemberRepositoryTest {
 	@Autowired
 	EntityManager em;
@@ -29,6 +41,15 @@ class MemberRepositoryTest {
 	@Autowired
 	MemberRepository memberRepository;
 
+	@Autowired
+	QueryShapeCache queryShapeCache;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	UsernameTrigramIndex usernameIndex;
+
 	@Test
 	@Transactional
 	public void basicTest() throws Exception {
@@ -95,6 +116,44 @@ class MemberRepositoryTest {
 
 	}
 
+	@Test
+	@Transactional
+	public void searchSlice() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+
+		Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 3));
+		assertThat(first.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
+		assertThat(first.hasNext()).isTrue();
+
+		Slice<MemberTeamDto> last = memberRepository.searchSlice(condition, PageRequest.of(1, 3));
+		assertThat(last.getContent()).extracting("username").containsExactly("member4");
+		assertThat(last.hasNext()).isFalse();
+	}
+
+	@Test
+	@Transactional
+	public void searchSlice_sort() throws Exception {
+		insertInitData();
+		em.persist(Member.builder().username("member5").age(40).build());
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		PageRequest pageRequest = PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "age"));
+
+		// 나이가 같으면 id 순
+		Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, pageRequest);
+		assertThat(first.getContent()).extracting("username").containsExactly("member4", "member5");
+
+		Slice<MemberTeamDto> second = memberRepository.searchSlice(condition, first.nextPageable());
+		assertThat(second.getContent()).extracting("username").containsExactly("member3", "member2");
+
+		Slice<MemberTeamDto> byTeam = memberRepository.searchSlice(condition,
+			PageRequest.of(0, 5, Sort.by(Sort.Order.desc("teamName").nullsLast())));
+		assertThat(byTeam.getContent()).extracting("username")
+			.containsExactly("member3", "member4", "member1", "member2", "member5");
+	}
+
 	@Test
 	@Transactional
 	public void querydslPredicateExecutorTest() throws Exception {
@@ -124,4 +183,173 @@ class MemberRepositoryTest {
 			System.out.println(memberTeamDto);
 		}
 	}
+
+	@Test
+	@Transactional
+	public void searchKeyset() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		MemberKeysetCondition keyset = new MemberKeysetCondition();
+		keyset.setSize(3);
+
+		MemberKeysetSlice first = memberRepository.searchKeyset(condition, keyset);
+		assertThat(first.getContent()).extracting("username").containsExactly("member1", "member2", "member3");
+		assertThat(first.isHasNext()).isTrue();
+
+		keyset.setCursor(first.getNextCursor());
+		MemberKeysetSlice second = memberRepository.searchKeyset(condition, keyset);
+		assertThat(second.getContent()).extracting("username").containsExactly("member4");
+		assertThat(second.isHasNext()).isFalse();
+		assertThat(second.getNextCursor()).isNull();
+	}
+
+	@Test
+	@Transactional
+	public void searchKeyset_orderByAge() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setAgeGoe(20);
+		MemberKeysetCondition keyset = new MemberKeysetCondition();
+		keyset.setOrderByAge(true);
+		keyset.setSize(2);
+
+		MemberKeysetSlice first = memberRepository.searchKeyset(condition, keyset);
+		assertThat(first.getContent()).extracting("age").containsExactly(20, 30);
+
+		keyset.setCursor(first.getNextCursor());
+		MemberKeysetSlice second = memberRepository.searchKeyset(condition, keyset);
+		assertThat(second.getContent()).extracting("age").containsExactly(40);
+		assertThat(second.isHasNext()).isFalse();
+	}
+
+	@Test
+	@Transactional
+	public void searchPageComplex_countCache() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		PageRequest pageRequest = PageRequest.of(0, 1);
+
+		assertThat(memberRepository.searchPageComplex(condition, pageRequest).getTotalElements()).isEqualTo(4);
+		assertThat(memberRepository.searchPageComplex(condition, pageRequest.next()).getTotalElements()).isEqualTo(4);
+
+		// 데이터를 바꾼 트랜잭션 안에서는 count 를 캐싱하지 않으므로 flush 된 변경이 바로 반영되어야 한다.
+		em.persist(Member.builder().username("member5").age(50).build());
+		assertThat(memberRepository.searchPageComplex(condition, pageRequest).getTotalElements()).isEqualTo(5);
+	}
+
+	@Test
+	@Transactional
+	public void searchStream() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setTeamName("teamB");
+
+		List<MemberTeamDto> result = new ArrayList<>();
+		memberRepository.searchStream(condition, result::add);
+
+		assertThat(result).extracting("username").containsExactly("member3", "member4");
+	}
+
+	@Test
+	@Transactional
+	public void search_queryShapeCache() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setTeamName("teamB");
+		memberRepository.search(condition);
+		long hits = queryShapeCache.getHitCount();
+
+		// 조건 값만 다르고 모양이 같으면 캐시된 JPQL 을 사용한다.
+		condition.setTeamName("teamA");
+		List<MemberTeamDto> result = memberRepository.search(condition);
+
+		assertThat(queryShapeCache.getHitCount()).isEqualTo(hits + 1);
+		assertThat(result).extracting("username").containsExactly("member1", "member2");
+
+		// 메트릭 태그에는 조건 유무 조합 없이 쿼리 이름만 들어간다.
+		assertThat(meterRegistry.find("querydsl.query").tag("method", "MemberRepositoryImpl.search").timers())
+			.extracting(timer -> timer.getId().getTag("query"))
+			.containsOnly("MemberRepositoryImpl.search");
+	}
+
+	@Test
+	@Transactional
+	public void queryMetrics() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setAgeGoe(20);
+		memberRepository.searchPageSimple(condition, PageRequest.of(0, 2));
+
+		Timer content = meterRegistry.find("querydsl.query")
+			.tags("method", "MemberRepositoryImpl.searchPageSimple", "type", "content")
+			.timer();
+		Timer count = meterRegistry.find("querydsl.query")
+			.tags("method", "MemberRepositoryImpl.searchPageSimple", "type", "count")
+			.timer();
+		assertThat(content).isNotNull();
+		assertThat(content.count()).isGreaterThanOrEqualTo(1);
+		assertThat(count).isNotNull();
+		assertThat(meterRegistry.find("querydsl.query.rows")
+			.tag("method", "MemberRepositoryImpl.searchPageSimple")
+			.summary().totalAmount()).isGreaterThanOrEqualTo(2);
+	}
+
+	@Test
+	@Transactional
+	public void search_usernameContains() throws Exception {
+		insertInitData();
+
+		// 3글자 이상이면 trigram 인덱스로 후보를 좁히고 like 로 다시 확인한다. (아직 flush 안 된 회원도 찾는다)
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setUsernameContains("ber3");
+		assertThat(memberRepository.search(condition)).extracting("username").containsExactly("member3");
+		assertThat(usernameIndex.candidates("ber3")).isNotNull();
+
+		// 3글자 미만이면 like 만 사용
+		condition.setUsernameContains("r4");
+		assertThat(memberRepository.search(condition)).extracting("username").containsExactly("member4");
+
+		// 후보가 없으면 쿼리 없이 빈 결과
+		condition.setUsernameContains("xyz");
+		assertThat(memberRepository.search(condition)).isEmpty();
+		assertThat(memberRepository.searchPageComplex(condition, PageRequest.of(0, 10)).getTotalElements()).isZero();
+
+		// like 의 특수문자는 그대로 비교
+		condition.setUsernameContains("mem%");
+		assertThat(memberRepository.search(condition)).isEmpty();
+
+		condition.setUsernameContains("mber");
+		condition.setTeamName("teamB");
+		Page<MemberTeamDto> page = memberRepository.searchPageComplex(condition, PageRequest.of(0, 10));
+		assertThat(page.getContent()).extracting("username").containsExactly("member3", "member4");
+		assertThat(memberRepository.searchSlice(condition, PageRequest.of(0, 10)).getContent()).hasSize(2);
+	}
+
+	@Test
+	@Transactional
+	public void searchPageDeferredJoin() throws Exception {
+		insertInitData();
+
+		MemberSearchCondition condition = new MemberSearchCondition();
+		for (int page = 0; page < 3; page++) {
+			PageRequest pageRequest = PageRequest.of(page, 3);
+			Page<MemberTeamDto> deferred = memberRepository.searchPageDeferredJoin(condition, pageRequest);
+			Page<MemberTeamDto> complex = memberRepository.searchPageComplex(condition, pageRequest);
+
+			assertThat(deferred.getContent()).usingFieldByFieldElementComparator()
+				.containsExactlyElementsOf(complex.getContent());
+			assertThat(deferred.getTotalElements()).isEqualTo(complex.getTotalElements());
+		}
+
+		condition.setTeamName("teamB");
+		Page<MemberTeamDto> result = memberRepository.searchPageDeferredJoin(condition, PageRequest.of(0, 1));
+		assertThat(result.getContent()).extracting("username", "teamName").containsExactly(tuple("member3", "teamB"));
+		assertThat(result.getTotalElements()).isEqualTo(2);
+	}
 }
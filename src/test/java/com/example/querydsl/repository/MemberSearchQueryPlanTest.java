@@ -0,0 +1,191 @@
+package com.example.querydsl.repository;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.List;
+import java.util.Locale;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.querydsl.dto.MemberKeysetCondition;
+import com.example.querydsl.dto.MemberKeysetSlice;
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.sql.SqlStatementDetector;
+import com.example.querydsl.sql.StatementScope;
+
+/**
+ * 검색 메서드가 실행한 SQL 을 p6spy 로 캡처해서 H2 EXPLAIN 으로 실행 계획을 확인한다.
+ * username, age 조건이 있는데 MEMBER 를 전체 스캔(tableScan)하면 실패한다.
+ * count 쿼리도 검사되도록 조건에 맞는 건수보다 작은 페이지로 조회한다.
+ *
+ * basicSelect/basicSelectFrom 은 조건이 없어서, 벌크 update/delete 는 select 가 아니라서 검사하지 않는다.
+ *
+ * teamName 조건만 있는 검색은 member left join team 이라서 member 를 먼저 읽어야 하므로 전체 스캔이 정상이다.
+ * (IDX_MEMBER_TEAM_AGE 는 inner join 이나 서브쿼리로 팀 id 를 먼저 찾는 경우에 사용된다.) 그래서 여기서는 검사하지 않는다.
+ */
+@SpringBootTest
+@Transactional
+class MemberSearchQueryPlanTest {
+
+	private static final String MEMBER_TABLE_SCAN = "public.member.tablescan";
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	MemberRepository memberRepository;
+
+	@Autowired
+	MemberTestRepository memberTestRepository;
+
+	@Autowired
+	SqlStatementDetector detector;
+
+	@BeforeEach
+	public void before() {
+		// 데이터가 거의 없으면 H2 가 인덱스보다 전체 스캔을 고를 수 있으므로 적당히 넣는다.
+		Team[] teams = new Team[10];
+		for (int i = 0; i < teams.length; i++) {
+			teams[i] = Team.builder().name("team" + i).build();
+			em.persist(teams[i]);
+		}
+		for (int i = 0; i < 500; i++) {
+			em.persist(Member.builder().username("member" + i).age(i % 100).team(teams[i % teams.length]).build());
+		}
+		em.flush();
+		em.clear();
+	}
+
+	@Test
+	public void search_username() throws Exception {
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setUsername("member1");
+
+		assertNoMemberTableScan(1, () -> memberRepository.search(condition));
+	}
+
+	@Test
+	public void search_ageRange() throws Exception {
+		assertNoMemberTableScan(1, () -> memberRepository.search(ageRange()));
+	}
+
+	@Test
+	public void searchStream_ageRange() throws Exception {
+		assertNoMemberTableScan(1, () -> memberRepository.searchStream(ageRange(), dto -> {
+		}));
+	}
+
+	@Test
+	public void searchPageSimple_ageRange() throws Exception {
+		// content, count
+		assertNoMemberTableScan(2, () -> memberRepository.searchPageSimple(ageRange(), PageRequest.of(0, 3)));
+		assertNoMemberTableScan(2,
+			() -> memberRepository.searchPageSimple_QuerydslRepositorySupport(ageRange(), PageRequest.of(0, 3)));
+	}
+
+	@Test
+	public void searchPageComplex_ageRange() throws Exception {
+		// 10 건 중 3 건이라 count 쿼리까지 실행된다.
+		assertNoMemberTableScan(2, () -> memberRepository.searchPageComplex(ageRange(), PageRequest.of(0, 3)));
+	}
+
+	@Test
+	public void searchPageDeferredJoin_ageRange() throws Exception {
+		// id, id in 으로 content, count
+		assertNoMemberTableScan(3, () -> memberRepository.searchPageDeferredJoin(ageRange(), PageRequest.of(1, 3)));
+	}
+
+	@Test
+	public void searchSlice_ageRange() throws Exception {
+		assertNoMemberTableScan(1, () -> memberRepository.searchSlice(ageRange(), PageRequest.of(0, 3)));
+	}
+
+	@Test
+	public void searchKeyset_orderByAge() throws Exception {
+		MemberSearchCondition condition = ageRange();
+		MemberKeysetCondition keyset = new MemberKeysetCondition();
+		keyset.setOrderByAge(true);
+		keyset.setSize(3);
+		MemberKeysetSlice first = memberRepository.searchKeyset(condition, keyset);
+		keyset.setCursor(first.getNextCursor());
+
+		assertNoMemberTableScan(1, () -> memberRepository.searchKeyset(condition, keyset));
+	}
+
+	@Test
+	public void applyPagination_username() throws Exception {
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setUsername("member1");
+
+		// 한 건이라 count 는 실행되지 않는다.
+		assertNoMemberTableScan(1, () -> memberTestRepository.applyPagination(condition, PageRequest.of(0, 10)));
+		assertNoMemberTableScan(1, () -> memberTestRepository.applyPaginationByShape(condition, PageRequest.of(0, 10)));
+	}
+
+	@Test
+	public void memberTestRepository_ageRange() throws Exception {
+		PageRequest pageRequest = PageRequest.of(0, 3);
+
+		assertNoMemberTableScan(2, () -> memberTestRepository.searchPageByApplyPage(ageRange(), pageRequest));
+		assertNoMemberTableScan(2, () -> memberTestRepository.applyPagination(ageRange(), pageRequest));
+		assertNoMemberTableScan(2, () -> memberTestRepository.applyPagination2(ageRange(), pageRequest));
+		assertNoMemberTableScan(2, () -> memberTestRepository.applyPaginationByShape(ageRange(), pageRequest));
+		assertNoMemberTableScan(2, () -> memberTestRepository.applyPaginationWithTeam(ageRange(), pageRequest)); // + team in
+		assertNoMemberTableScan(3, () -> memberTestRepository.applyDeferredJoinPagination(ageRange(), pageRequest.next()));
+		assertNoMemberTableScan(1, () -> memberTestRepository.applySlicing(ageRange(), pageRequest));
+		assertNoMemberTableScan(3, () -> memberTestRepository.forEachMemberChunk(ageRange(), 4, chunk -> {
+		})); // 4, 4, 2 건
+	}
+
+	/**
+	 * 500 건 중 10 건
+	 */
+	private MemberSearchCondition ageRange() {
+		MemberSearchCondition condition = new MemberSearchCondition();
+		condition.setAgeGoe(30);
+		condition.setAgeLoe(31);
+		return condition;
+	}
+
+	/**
+	 * @param expectedSelects 실행되어야 하는 member select 수. count 쿼리가 실행되지 않고 통과하는 것을 막는다.
+	 */
+	private void assertNoMemberTableScan(int expectedSelects, Runnable search) {
+		em.clear(); // 이전 검색에서 영속성 컨텍스트에 올라간 team 때문에 select 수가 달라지지 않도록
+		List<String> statements;
+		try (StatementScope scope = detector.open("queryPlan", Integer.MAX_VALUE, Integer.MAX_VALUE)) {
+			search.run();
+			statements = scope.getStatements();
+		}
+
+		int explained = 0;
+		for (String sql : statements) {
+			String normalized = StatementScope.normalize(sql);
+			if (!normalized.startsWith("select") || !normalized.contains(" member ")) {
+				continue;
+			}
+			String plan = explain(sql);
+			assertThat(plan.toLowerCase(Locale.ROOT)).as("plan of %s", sql).doesNotContain(MEMBER_TABLE_SCAN);
+			explained++;
+		}
+		assertThat(explained).as("captured member select").isEqualTo(expectedSelects);
+	}
+
+	private String explain(String sql) {
+		List<?> rows = em.createNativeQuery("EXPLAIN " + sql).getResultList();
+		StringBuilder plan = new StringBuilder();
+		for (Object row : rows) {
+			plan.append(row).append('\n');
+		}
+		return plan.toString();
+	}
+}
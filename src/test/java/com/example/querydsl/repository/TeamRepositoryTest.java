@@ -0,0 +1,115 @@
+package com.example.querydsl.repository;
+
+import static com.example.querydsl.entity.QMember.*;
+import static com.example.querydsl.entity.QTeam.*;
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.function.Function;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+/**
+ * READ_WRITE 2차 캐시는 커밋된 데이터만, 캐시에 들어간 뒤 시작한 세션에서만 읽히므로
+ * @Transactional(롤백) 대신 EntityManager 를 직접 열어서 커밋한다.
+ */
+@SpringBootTest
+class TeamRepositoryTest {
+
+	@Autowired
+	EntityManagerFactory emf;
+
+	@Autowired
+	TeamRepository teamRepository;
+
+	@Test
+	public void secondLevelCache_memberTeam() throws Exception {
+		Long[] memberIds = inTransaction(em -> {
+			Team teamA = Team.builder().name("teamA").build();
+			em.persist(teamA);
+			Member member1 = Member.builder().username("member1").age(10).team(teamA).build();
+			Member member2 = Member.builder().username("member2").age(20).team(teamA).build();
+			em.persist(member1);
+			em.persist(member2);
+			return new Long[] {member1.getId(), member2.getId()};
+		});
+
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		CacheRegionStatistics teamRegion = statistics.getCacheRegionStatistics(Team.class.getName());
+		long hitCount = teamRegion.getHitCount();
+		long queryCount = statistics.getPrepareStatementCount();
+
+		// 커밋할 때 2차 캐시에 저장됐으므로 member.team 은 select 없이 캐시에서 가져온다.
+		String teamName = inTransaction(em -> em.find(Member.class, memberIds[1]).getTeam().getName());
+
+		assertThat(teamName).isEqualTo("teamA");
+		assertThat(teamRegion.getHitCount()).isEqualTo(hitCount + 1);
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(queryCount + 1); // member select 만
+	}
+
+	@Test
+	public void queryCache_findByName() throws Exception {
+		inTransaction(em -> {
+			em.persist(Team.builder().name("teamA").build());
+			return null;
+		});
+
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		long putCount = statistics.getQueryCachePutCount();
+		long hitCount = statistics.getQueryCacheHitCount();
+
+		assertThat(teamRepository.findByName("teamA")).isPresent();
+		assertThat(statistics.getQueryCachePutCount()).isEqualTo(putCount + 1);
+
+		// 같은 파라미터면 쿼리 캐시에서 id 를 가져온다.
+		assertThat(teamRepository.findByName("teamA")).isPresent();
+		assertThat(statistics.getQueryCacheHitCount()).isEqualTo(hitCount + 1);
+
+		// team 테이블이 바뀌면 캐시된 결과는 오래된 것으로 보고 다시 조회한다.
+		inTransaction(em -> {
+			em.persist(Team.builder().name("teamB").build());
+			return null;
+		});
+		long missCount = statistics.getQueryCacheMissCount();
+
+		assertThat(teamRepository.findByName("teamA")).isPresent();
+		assertThat(statistics.getQueryCacheHitCount()).isEqualTo(hitCount + 1);
+		assertThat(statistics.getQueryCacheMissCount()).isEqualTo(missCount + 1);
+		assertThat(statistics.getQueryCachePutCount()).isEqualTo(putCount + 2);
+	}
+
+	@AfterEach
+	public void cleanUp() {
+		inTransaction(em -> {
+			JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+			queryFactory.delete(member).execute();
+			queryFactory.delete(team).execute();
+			return null;
+		});
+		emf.getCache().evictAll();
+	}
+
+	private <R> R inTransaction(Function<EntityManager, R> work) {
+		EntityManager em = emf.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			R result = work.apply(em);
+			em.getTransaction().commit();
+			return result;
+		} finally {
+			em.close();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.example.querydsl.repository.support;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SingleFlightTest {
+
+	static final int CALLERS = 10;
+
+	MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	SingleFlight<String, Object> singleFlight = new SingleFlight<>("test", Duration.ofSeconds(5), meterRegistry);
+	ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+	CountDownLatch release = new CountDownLatch(1);
+	AtomicInteger executions = new AtomicInteger();
+
+	@AfterEach
+	public void after() {
+		release.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void shareInFlightResult() throws Exception {
+		List<Future<Object>> results = callConcurrently(() -> {
+			executions.incrementAndGet();
+			await(release);
+			return new Object();
+		});
+
+		Object first = results.get(0).get(5, TimeUnit.SECONDS);
+		for (Future<Object> result : results) {
+			assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(first);
+		}
+		assertThat(executions.get()).isEqualTo(1);
+		assertThat(singleFlight.inFlightCount()).isZero();
+
+		// 끝난 결과는 보관하지 않는다.
+		assertThat(singleFlight.execute("key", Object::new)).isNotSameAs(first);
+	}
+
+	@Test
+	public void shareFailure() throws Exception {
+		List<Future<Object>> results = callConcurrently(() -> {
+			executions.incrementAndGet();
+			await(release);
+			throw new IllegalStateException("query failed");
+		});
+
+		for (Future<Object> result : results) {
+			assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+				.hasCauseInstanceOf(IllegalStateException.class);
+		}
+		assertThat(executions.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void interruptFollower() throws Exception {
+		Future<Object> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+			await(release);
+			return "leader";
+		}));
+		CountDownLatch followerDone = new CountDownLatch(1);
+		AtomicInteger cancelled = new AtomicInteger();
+		Future<?> follower = executor.submit(() -> {
+			try {
+				singleFlight.execute("key", () -> "follower");
+			} catch (CancellationException e) {
+				cancelled.incrementAndGet();
+			} finally {
+				followerDone.countDown();
+			}
+		});
+		awaitShared(1);
+
+		follower.cancel(true);
+
+		// leader 가 끝나기 전에 follower 스레드가 풀려난다.
+		assertThat(followerDone.await(5, TimeUnit.SECONDS)).isTrue();
+		assertThat(cancelled.get()).isEqualTo(1);
+		assertThat(leader.isDone()).isFalse();
+	}
+
+	@Test
+	public void doNotShareInterruptedLeaderFailure() throws Exception {
+		Future<Object> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+			executions.incrementAndGet();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("leader interrupted", e);
+			}
+			return "leader";
+		}));
+		while (executions.get() == 0) {
+			Thread.sleep(10);
+		}
+		List<Future<Object>> followers = new ArrayList<>();
+		for (int i = 0; i < CALLERS - 1; i++) {
+			followers.add(executor.submit(() -> singleFlight.execute("key", () -> {
+				executions.incrementAndGet();
+				return "retried";
+			})));
+		}
+		awaitShared(CALLERS - 1);
+
+		leader.cancel(true); // leader 의 timeout
+
+		for (Future<Object> follower : followers) {
+			assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("retried");
+		}
+		assertThat(executions.get()).isBetween(2, CALLERS);
+	}
+
+	@Test
+	public void executeAfterMaxWait() throws Exception {
+		singleFlight = new SingleFlight<>("test", Duration.ofMillis(100), meterRegistry);
+		executor.submit(() -> singleFlight.execute("key", () -> {
+			await(release);
+			return "leader";
+		}));
+		while (singleFlight.inFlightCount() == 0) {
+			Thread.sleep(10);
+		}
+
+		assertThat(singleFlight.execute("key", () -> "follower")).isEqualTo("follower");
+		assertThat(meterRegistry.get("querydsl.single-flight").tags("name", "test", "result", "timeout").counter()
+			.count()).isEqualTo(1);
+	}
+
+	/**
+	 * leader 가 loader 를 실행하는 중에 나머지가 모두 합류한 다음 release 한다.
+	 */
+	private List<Future<Object>> callConcurrently(Supplier<Object> loader) throws InterruptedException {
+		List<Future<Object>> results = new ArrayList<>();
+		for (int i = 0; i < CALLERS; i++) {
+			results.add(executor.submit(() -> singleFlight.execute("key", loader)));
+		}
+
+		awaitShared(CALLERS - 1);
+		release.countDown();
+		return results;
+	}
+
+	private void awaitShared(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (sharedCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(sharedCount()).isEqualTo(count);
+	}
+
+	private double sharedCount() {
+		return meterRegistry.get("querydsl.single-flight").tags("name", "test", "result", "shared").counter().count();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
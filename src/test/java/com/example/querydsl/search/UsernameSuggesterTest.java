@@ -0,0 +1,78 @@
+package com.example.querydsl.search;
+
+import static org.assertj.core.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.event.EntityChangedEvent;
+
+class UsernameSuggesterTest {
+
+	private static final String[] PROPERTY_NAMES = {"age", "team", "username"};
+
+	UsernameSuggester suggester;
+
+	@BeforeEach
+	public void before() {
+		// DB 는 사용하지 않고 이벤트로만 채운다.
+		suggester = new UsernameSuggester(null, null, "recent", 3);
+		insert(1L, "member1", 30);
+		insert(2L, "member2", 10);
+		insert(3L, "member3", 20);
+		insert(4L, "member4", 40);
+		insert(5L, "memo", 50);
+		insert(6L, "userA", 60);
+	}
+
+	@Test
+	public void suggest_recent() throws Exception {
+		assertThat(suggester.suggest("member", 10, null))
+			.extracting("memberId")
+			.containsExactly(4L, 3L, 2L); // max-size 3
+	}
+
+	@Test
+	public void suggest_age() throws Exception {
+		assertThat(suggester.suggest("mem", 2, UsernameSuggester.Rank.AGE))
+			.extracting("username")
+			.containsExactly("memo", "member4");
+	}
+
+	@Test
+	public void suggest_noMatch() throws Exception {
+		assertThat(suggester.suggest("x", 10, null)).isEmpty();
+		assertThat(suggester.suggest("", 10, null)).isEmpty();
+		assertThat(suggester.suggest("Member", 10, null)).isEmpty(); // 대소문자 구분
+	}
+
+	@Test
+	public void updateAndDelete() throws Exception {
+		suggester.onMemberCommitted(event(EntityChangedEvent.Type.UPDATE, 4L, "userB", 40));
+		suggester.onMemberCommitted(event(EntityChangedEvent.Type.DELETE, 3L, null, 0));
+
+		assertThat(suggester.suggest("member", 10, null)).extracting("memberId").containsExactly(2L, 1L);
+		assertThat(suggester.suggest("user", 10, UsernameSuggester.Rank.AGE))
+			.extracting("username")
+			.containsExactly("userA", "userB");
+	}
+
+	@Test
+	public void ignoreOtherEntity() throws Exception {
+		suggester.onMemberCommitted(new EntityChangedEvent(EntityChangedEvent.Type.INSERT, Team.class, null, 7L,
+			new String[] {"name"}, new Object[] {"memberTeam"}, null));
+
+		assertThat(suggester.suggest("memberT", 10, null)).isEmpty();
+	}
+
+	private void insert(Long id, String username, int age) {
+		suggester.onMemberCommitted(event(EntityChangedEvent.Type.INSERT, id, username, age));
+	}
+
+	private EntityChangedEvent event(EntityChangedEvent.Type type, Long id, String username, int age) {
+		Object[] state = type == EntityChangedEvent.Type.DELETE ? null : new Object[] {age, null, username};
+		return new EntityChangedEvent(type, Member.class, null, id, PROPERTY_NAMES, state, null);
+	}
+}
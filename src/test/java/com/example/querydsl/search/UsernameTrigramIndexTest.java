@@ -0,0 +1,88 @@
+package com.example.querydsl.search;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.event.EntityChangedEvent;
+
+class UsernameTrigramIndexTest {
+
+	private static final String[] PROPERTY_NAMES = {"username"};
+
+	UsernameTrigramIndex index;
+
+	@BeforeEach
+	public void before() {
+		// DB 는 사용하지 않고 이벤트로만 채운다.
+		index = new UsernameTrigramIndex(null, null, Integer.MAX_VALUE);
+		ReflectionTestUtils.setField(index, "ready", true);
+	}
+
+	@Test
+	public void candidates() throws Exception {
+		insert(1L, "member1");
+		insert(2L, "member2");
+		insert(3L, "userA");
+
+		assertThat(index.candidates("mber")).containsExactlyInAnyOrder(1L, 2L);
+		assertThat(index.candidates("xyz")).isEmpty();
+		assertThat(index.candidates("me")).isNull(); // 3글자 미만
+
+		index.afterMemberChangeCommitted(event(EntityChangedEvent.Type.DELETE, 1L, null));
+		assertThat(index.candidates("mber")).containsExactly(2L);
+	}
+
+	/**
+	 * 한 스레드는 같은 trigram 의 마지막 id 를 계속 추가/제거하고(빈 set 제거), 다른 스레드는 다른 id 를 추가한다.
+	 * 추가한 id 가 map 에서 빠진 set 에 들어가서 유실되면 안된다.
+	 */
+	@Test
+	public void addWhileRemovingLastId() throws Exception {
+		int count = 10000;
+		CountDownLatch start = new CountDownLatch(1);
+
+		CompletableFuture<Void> churn = CompletableFuture.runAsync(() -> {
+			await(start);
+			for (int i = 0; i < count; i++) {
+				insert(0L, "abc");
+				index.afterMemberChangeCommitted(event(EntityChangedEvent.Type.DELETE, 0L, null));
+			}
+		});
+		CompletableFuture<Void> adds = CompletableFuture.runAsync(() -> {
+			await(start);
+			for (long id = 1; id <= count; id++) {
+				index.onMemberChanged(event(EntityChangedEvent.Type.INSERT, id, "abc"));
+			}
+		});
+		start.countDown();
+		CompletableFuture.allOf(churn, adds).get();
+
+		assertThat(index.candidates("abc")).hasSize(count).doesNotContain(0L);
+	}
+
+	private void insert(Long id, String username) {
+		EntityChangedEvent event = event(EntityChangedEvent.Type.INSERT, id, username);
+		index.onMemberChanged(event);
+		index.afterMemberChangeCommitted(event);
+	}
+
+	private EntityChangedEvent event(EntityChangedEvent.Type type, Long id, String username) {
+		Object[] state = type == EntityChangedEvent.Type.DELETE ? null : new Object[] {username};
+		return new EntityChangedEvent(type, Member.class, null, id, PROPERTY_NAMES, state, null);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
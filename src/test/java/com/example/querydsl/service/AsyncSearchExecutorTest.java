@@ -0,0 +1,173 @@
+package com.example.querydsl.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AsyncSearchExecutorTest {
+
+	MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	CountDownLatch release = new CountDownLatch(1);
+	RecordingTransactionManager transactionManager = new RecordingTransactionManager();
+	AsyncSearchExecutor executor;
+
+	@AfterEach
+	public void after() {
+		release.countDown();
+		executor.shutdown();
+	}
+
+	@Test
+	public void submit() throws Exception {
+		executor = new AsyncSearchExecutor(meterRegistry, transactionManager, 2, 10, 10, Duration.ofSeconds(5));
+
+		DeferredResult<String> result = executor.submit("v3", () -> Thread.currentThread().getName());
+
+		assertThat(await(result)).asString().startsWith("async-search-"); // 요청 스레드가 아닌 전용 스레드에서 실행
+	}
+
+	@Test
+	public void runInTimeoutTransaction() throws Exception {
+		executor = new AsyncSearchExecutor(meterRegistry, transactionManager, 2, 10, 10, Duration.ofMillis(2500));
+
+		assertThat(await(executor.submit("v3", () -> "v3"))).isEqualTo("v3");
+
+		// 쿼리마다 남은 시간이 javax.persistence.query.timeout 으로 걸리도록 timeout 을 건 readOnly 트랜잭션에서 실행
+		assertThat(transactionManager.definition.isReadOnly()).isTrue();
+		assertThat(transactionManager.definition.getTimeout()).isEqualTo(3);
+		assertThat(transactionManager.committed).isEqualTo(1);
+	}
+
+	@Test
+	public void timeout() throws Exception {
+		executor = new AsyncSearchExecutor(meterRegistry, transactionManager, 1, 10, 1, Duration.ofSeconds(5));
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		DeferredResult<String> result = executor.submit("v3", () -> {
+			started.countDown();
+			if (blockUntilReleased() == null) {
+				interrupted.countDown();
+			}
+			return "done";
+		});
+
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+		// 서블릿 컨테이너가 timeout 시 호출하는 콜백
+		((Runnable) ReflectionTestUtils.getField(result, "timeoutCallback")).run();
+
+		assertThat(result.getResult()).isInstanceOfSatisfying(ResponseStatusException.class,
+			e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+		assertThat(meterRegistry.get("querydsl.async.timeout").tag("endpoint", "v3").counter().count()).isEqualTo(1);
+		assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue(); // 실행 중인 검색은 interrupt
+
+		// interrupt 된 검색이 끝나면 endpoint 허용 수를 돌려준다.
+		assertThat(await(executor.submit("v3", () -> "next"))).isEqualTo("next");
+	}
+
+	@Test
+	public void timeoutBeforeStart() throws Exception {
+		executor = new AsyncSearchExecutor(meterRegistry, transactionManager, 1, 10, 1, Duration.ofSeconds(5));
+		executor.submit("v2", this::blockUntilReleased); // 스레드를 잡아둔다
+		DeferredResult<String> queued = executor.submit("v3", () -> "queued");
+
+		((Runnable) ReflectionTestUtils.getField(queued, "timeoutCallback")).run();
+		release.countDown();
+
+		// 실행되지 못하고 취소된 검색도 endpoint 허용 수를 돌려준다.
+		assertThat(await(executor.submit("v3", () -> "next"))).isEqualTo("next");
+	}
+
+	@Test
+	public void rejectByEndpointConcurrency() throws Exception {
+		executor = new AsyncSearchExecutor(meterRegistry, transactionManager, 4, 10, 1, Duration.ofSeconds(5));
+		executor.submit("v3", this::blockUntilReleased);
+
+		DeferredResult<String> rejected = executor.submit("v3", () -> "v3");
+		DeferredResult<String> otherEndpoint = executor.submit("v2", () -> "v2");
+
+		assertThat(rejected.getResult()).isInstanceOf(ResponseStatusException.class);
+		assertThat(await(otherEndpoint)).isEqualTo("v2"); // 다른 endpoint 는 영향 없음
+		assertThat(rejectedCount("v3", "concurrency")).isEqualTo(1);
+	}
+
+	@Test
+	public void rejectByQueue() throws Exception {
+		executor = new AsyncSearchExecutor(meterRegistry, transactionManager, 1, 1, 10, Duration.ofSeconds(5));
+		executor.submit("v3", this::blockUntilReleased); // 실행 중
+		DeferredResult<String> queued = executor.submit("v3", () -> "queued"); // 대기
+
+		DeferredResult<String> rejected = executor.submit("v3", () -> "rejected");
+
+		assertThat(rejected.getResult()).isInstanceOf(ResponseStatusException.class);
+		assertThat(rejectedCount("v3", "queue")).isEqualTo(1);
+
+		release.countDown();
+		assertThat(await(queued)).isEqualTo("queued");
+	}
+
+	/**
+	 * @return interrupt 되면 null
+	 */
+	private String blockUntilReleased() {
+		try {
+			release.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		return "done";
+	}
+
+	private double rejectedCount(String endpoint, String reason) {
+		return meterRegistry.get("querydsl.async.rejected").tags("endpoint", endpoint, "reason", reason).counter()
+			.count();
+	}
+
+	private Object await(DeferredResult<?> result) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!result.hasResult() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		return result.getResult();
+	}
+
+	/**
+	 * DB 없이 트랜잭션 설정만 기록한다.
+	 */
+	static class RecordingTransactionManager implements PlatformTransactionManager {
+		volatile TransactionDefinition definition;
+		volatile int committed;
+
+		@Override
+		public TransactionStatus getTransaction(TransactionDefinition definition) {
+			this.definition = definition;
+			return new SimpleTransactionStatus();
+		}
+
+		@Override
+		public void commit(TransactionStatus status) {
+			committed++;
+		}
+
+		@Override
+		public void rollback(TransactionStatus status) {
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.example.querydsl.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.example.querydsl.dto.MemberBulkResult;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.repository.MemberRepository;
+
+@SpringBootTest
+@Transactional
+class MemberBulkServiceTest {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	MemberBulkService memberBulkService;
+
+	@Autowired
+	MemberRepository memberRepository;
+
+	@Test
+	public void ingest() throws Exception {
+		em.persist(Team.builder().name("teamA").build());
+
+		String json = "["
+			+ "{\"username\":\"bulk1\",\"age\":10,\"teamName\":\"teamA\"},"
+			+ "{\"username\":\"bulk2\",\"age\":20,\"teamName\":\"teamB\"},"
+			+ "{\"username\":\"bulk3\",\"age\":30,\"teamName\":\"teamB\"},"
+			+ "{\"username\":\"bulk4\",\"age\":40}"
+			+ "]";
+
+		MemberBulkResult result = memberBulkService.ingest(
+			new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+		assertThat(result.getMemberCount()).isEqualTo(4);
+		assertThat(result.getCreatedTeamCount()).isEqualTo(1); // teamA 는 이미 있음
+
+		List<Member> members = memberRepository.findByUsername("bulk3");
+		assertThat(members).hasSize(1);
+		assertThat(members.get(0).getTeam().getName()).isEqualTo("teamB");
+		assertThat(memberRepository.findByUsername("bulk4").get(0).getTeam()).isNull();
+	}
+
+	@Test
+	public void ingest_notArray() throws Exception {
+		assertThatThrownBy(() -> ingest("{\"username\":\"bulk1\",\"age\":10}"))
+			.isInstanceOf(ResponseStatusException.class)
+			.extracting("status").isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	@Test
+	public void ingest_notObjectElement() throws Exception {
+		assertThatThrownBy(() -> ingest("[{\"username\":\"bulk1\",\"age\":10}, 1, {\"username\":\"bulk2\"}]"))
+			.isInstanceOf(ResponseStatusException.class)
+			.extracting("status").isEqualTo(HttpStatus.BAD_REQUEST);
+		assertThat(memberRepository.findByUsername("bulk2")).isEmpty();
+	}
+
+	@Test
+	public void ingest_malformed() throws Exception {
+		assertThatThrownBy(() -> ingest("[{\"username\":"))
+			.isInstanceOf(ResponseStatusException.class)
+			.extracting("status").isEqualTo(HttpStatus.BAD_REQUEST);
+	}
+
+	private MemberBulkResult ingest(String json) throws Exception {
+		return memberBulkService.ingest(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,85 @@
+package com.example.querydsl.service;
+
+import static org.assertj.core.api.Assertions.*;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.dto.MemberSearchCondition;
+import com.example.querydsl.dto.MemberTeamDto;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * 쓰기 트랜잭션은 롤백하므로 정리하지 않는다.
+ */
+@SpringBootTest
+class MemberSearchServiceTest {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	MemberSearchService memberSearchService;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	TransactionTemplate transactionTemplate;
+	MemberSearchCondition condition = new MemberSearchCondition();
+
+	@BeforeEach
+	public void before() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		condition.setUsername("flightMember");
+	}
+
+	@Test
+	public void bypassSingleFlightInWriteTransaction() throws Exception {
+		double leaderCount = leaderCount();
+
+		Page<MemberTeamDto> uncommitted = transactionTemplate.execute(status -> {
+			Team team = Team.builder().name("flightTeam").build();
+			em.persist(team);
+			em.persist(Member.builder().username("flightMember").age(10).team(team).build());
+			em.flush();
+			status.setRollbackOnly();
+			return memberSearchService.searchPageComplex(condition, PageRequest.of(0, 10));
+		});
+
+		// 커밋 전 변경이 보이는 결과는 공유하지 않는다.
+		assertThat(uncommitted.getContent()).extracting("username").containsExactly("flightMember");
+		assertThat(leaderCount()).isEqualTo(leaderCount);
+
+		assertThat(memberSearchService.searchPageComplex(condition, PageRequest.of(0, 10))).isEmpty();
+		assertThat(leaderCount()).isEqualTo(leaderCount + 1);
+	}
+
+	@Test
+	public void singleFlightInReadOnlyTransaction() throws Exception {
+		double leaderCount = leaderCount();
+		transactionTemplate.setReadOnly(true);
+
+		transactionTemplate.execute(status -> memberSearchService.searchPageSimple(condition, PageRequest.of(0, 10)));
+
+		assertThat(leaderCount()).isEqualTo(leaderCount + 1);
+	}
+
+	private double leaderCount() {
+		return meterRegistry.get("querydsl.single-flight").tags("name", "member-search", "result", "leader").counter()
+			.count();
+	}
+}
@@ -0,0 +1,107 @@
+package com.example.querydsl.sql;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+
+@SpringBootTest
+@Transactional
+class SqlStatementDetectorTest {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	SqlStatementDetector detector;
+
+	@Test
+	public void normalize() throws Exception {
+		String sql = "/* select m from Member m */ select member0_.MEMBER_ID from member member0_\n"
+			+ "where member0_.username='member1' and member0_.age in (10, 20, 30) limit 5";
+
+		assertThat(StatementScope.normalize(sql)).isEqualTo(
+			"select member0_.member_id from member member0_ where member0_.username=? and member0_.age in (?) limit ?");
+	}
+
+	@Test
+	public void repeatedSelect_lazyLoading() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Team team = Team.builder().name("team" + i).build();
+			em.persist(team);
+			em.persist(Member.builder().username("member" + i).age(10).team(team).build());
+		}
+		em.flush();
+		em.clear();
+
+		StatementScope scope = detector.open("lazyLoading", 100, 1);
+		List<Member> members = em.createQuery("select m from Member m", Member.class).getResultList();
+		for (Member member : members) {
+			member.getTeam().getName(); // 팀마다 select (N+1)
+		}
+
+		assertThat(scope.getStatementCount()).isEqualTo(1 + members.size());
+		assertThat(scope.getViolations()).hasSize(1);
+		assertThatThrownBy(scope::close) // 테스트 설정은 fail-on-violation: true
+			.isInstanceOf(IllegalStateException.class)
+			.hasMessageContaining("repeated select x3");
+	}
+
+	@Test
+	public void fetchJoin_noViolation() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Team team = Team.builder().name("team" + i).build();
+			em.persist(team);
+			em.persist(Member.builder().username("member" + i).age(10).team(team).build());
+		}
+		em.flush();
+		em.clear();
+
+		try (StatementScope scope = detector.open("fetchJoin", 100, 1)) {
+			em.createQuery("select m from Member m join fetch m.team", Member.class).getResultList()
+				.forEach(member -> member.getTeam().getName());
+
+			assertThat(scope.getStatementCount()).isEqualTo(1);
+			assertThat(scope.getViolations()).isEmpty();
+		}
+	}
+
+	@Test
+	public void propagate_otherThread() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (StatementScope scope = detector.open("propagate")) {
+			executor.submit(StatementScope.propagate(
+				() -> em.createQuery("select t from Team t", Team.class).getResultList())).get();
+			assertThat(scope.getStatementCount()).isEqualTo(1);
+
+			// 이어주지 않은 작업의 SQL 은 기록되지 않는다.
+			executor.submit(() -> em.createQuery("select t from Team t", Team.class).getResultList()).get();
+			assertThat(scope.getStatementCount()).isEqualTo(1);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void openLogOnly() throws Exception {
+		StatementScope scope = detector.openLogOnly("GET /v3/members");
+		for (int i = 0; i < 11; i++) {
+			scope.record("select * from member where member_id = " + i, null);
+		}
+
+		assertThat(scope.getViolations()).hasSize(1); // max-repeated-selects: 10
+		scope.close(); // 요청 scope 는 fail-on-violation 이어도 로그만 남긴다
+		assertThat(StatementScope.current()).isNull();
+	}
+}
@@ -0,0 +1,31 @@
+package com.example.querydsl.sql;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+/**
+ * 테스트 메서드 하나를 StatementScope 하나로 묶는다. 임계치를 넘으면(fail-on-violation) 테스트가 실패한다.
+ * ex) @SpringBootTest @ExtendWith(StatementScopeExtension.class)
+ */
+public class StatementScopeExtension implements BeforeEachCallback, AfterEachCallback {
+
+	private static final ExtensionContext.Namespace NAMESPACE =
+		ExtensionContext.Namespace.create(StatementScopeExtension.class);
+
+	@Override
+	public void beforeEach(ExtensionContext context) {
+		SqlStatementDetector detector = SpringExtension.getApplicationContext(context)
+			.getBean(SqlStatementDetector.class);
+		context.getStore(NAMESPACE).put(context.getUniqueId(), detector.open(context.getDisplayName()));
+	}
+
+	@Override
+	public void afterEach(ExtensionContext context) {
+		StatementScope scope = context.getStore(NAMESPACE).remove(context.getUniqueId(), StatementScope.class);
+		if (scope != null) {
+			scope.close();
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package com.example.querydsl.stats;
+
+import static com.example.querydsl.entity.QMember.*;
+import static com.example.querydsl.entity.QTeam.*;
+import static org.assertj.core.api.Assertions.*;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.Ordered;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.querydsl.dto.TeamStatsDto;
+import com.example.querydsl.entity.Member;
+import com.example.querydsl.entity.Team;
+import com.example.querydsl.event.EntityChangedEvent;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+
+/**
+ * 커밋된 이벤트로만 갱신되므로 @Transactional 을 쓰지 않고 직접 정리한다.
+ */
+@SpringBootTest
+class TeamStatsReadModelTest {
+
+	@Autowired
+	EntityManager em;
+
+	@Autowired
+	JPAQueryFactory queryFactory;
+
+	@Autowired
+	TeamStatsReadModel teamStatsReadModel;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	ApplicationEventPublisher eventPublisher;
+
+	TransactionTemplate transactionTemplate;
+	Long teamAId;
+	Long teamBId;
+	Long member2Id;
+	Long member4Id;
+
+	@BeforeEach
+	public void before() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.execute(status -> {
+			Team teamA = Team.builder().name("statsTeamA").build();
+			Team teamB = Team.builder().name("statsTeamB").build();
+			em.persist(teamA);
+			em.persist(teamB);
+			Member member2 = Member.builder().username("member2").age(20).team(teamA).build();
+			Member member4 = Member.builder().username("member4").age(40).team(teamB).build();
+			em.persist(Member.builder().username("member1").age(10).team(teamA).build());
+			em.persist(member2);
+			em.persist(Member.builder().username("member3").age(30).team(teamB).build());
+			em.persist(member4);
+			teamAId = teamA.getId();
+			teamBId = teamB.getId();
+			member2Id = member2.getId();
+			member4Id = member4.getId();
+			return null;
+		});
+	}
+
+	@AfterEach
+	public void after() {
+		transactionTemplate.execute(status -> {
+			queryFactory.delete(member).where(member.team.id.in(teamAId, teamBId)).execute();
+			queryFactory.delete(team).where(team.id.in(teamAId, teamBId)).execute();
+			return null;
+		});
+		teamStatsReadModel.reconcile();
+	}
+
+	@Test
+	public void reconcile_afterBulkUpdate() throws Exception {
+		assertStats(teamAId, "statsTeamA", 2, 30, 20, 10);
+		assertStats(teamBId, "statsTeamB", 2, 70, 40, 30);
+
+		// member2 를 teamB 로 옮기고 벌크 update 로 나이 변경 (이벤트 없음), member4(teamB 최대 나이) 삭제
+		transactionTemplate.execute(status -> {
+			Member member2 = em.find(Member.class, member2Id);
+			member2.changeTeam(em.find(Team.class, teamBId));
+			queryFactory.update(member).set(member.age, 50).where(member.id.eq(member2Id)).execute();
+			em.remove(em.find(Member.class, member4Id));
+			return null;
+		});
+		assertThat(teamStatsReadModel.reconcile()).isTrue();
+
+		assertStats(teamAId, "statsTeamA", 1, 10, 10, 10);
+		assertStats(teamBId, "statsTeamB", 2, 80, 50, 30);
+	}
+
+	@Test
+	public void updateAndDelete() throws Exception {
+		transactionTemplate.execute(status -> {
+			em.find(Member.class, member2Id).changeTeam(em.find(Team.class, teamBId));
+			em.remove(em.find(Member.class, member4Id));
+			return null;
+		});
+
+		// 대사 없이 이벤트로만 반영
+		assertStats(teamAId, "statsTeamA", 1, 10, 10, 10);
+		assertStats(teamBId, "statsTeamB", 2, 50, 30, 20);
+
+		// DB 와 같은지 확인
+		assertThat(teamStatsReadModel.reconcile()).isTrue();
+		assertStats(teamAId, "statsTeamA", 1, 10, 10, 10);
+		assertStats(teamBId, "statsTeamB", 2, 50, 30, 20);
+	}
+
+	@Test
+	public void retryDiscardedReconcile() throws Exception {
+		// 이벤트 없이 member3 나이 변경
+		transactionTemplate.execute(status -> queryFactory.update(member)
+			.set(member.age, 35)
+			.where(member.team.id.eq(teamBId), member.age.eq(30))
+			.execute());
+
+		// 쓰기가 계속되는 동안 대사는 집계 도중에 반영된 이벤트 때문에 버려진다.
+		AtomicBoolean writing = new AtomicBoolean(true);
+		CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+			boolean toTeamB = true;
+			while (writing.get()) {
+				moveMember2(toTeamB ? teamBId : teamAId);
+				toTeamB = !toTeamB;
+			}
+			moveMember2(teamAId);
+		});
+		eventPublisher.publishEvent(EntityChangedEvent.bulk(Member.class)); // 벌크 연산 후 발행하는 이벤트
+		Thread.sleep(500);
+		writing.set(false);
+		writer.get(5, TimeUnit.SECONDS);
+
+		// 쓰기가 멈추면 다시 한 대사가 반영된다.
+		long deadline = System.currentTimeMillis() + 10000;
+		while (teamSum(teamBId) != 75 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertStats(teamAId, "statsTeamA", 2, 30, 20, 10);
+		assertStats(teamBId, "statsTeamB", 2, 75, 40, 35);
+	}
+
+	/**
+	 * 커밋은 됐지만 AFTER_COMMIT 이벤트는 아직 반영하지 않은 사이에 대사하면, 그 변경이 대사와 이벤트로 두 번 더해지지 않도록 버린다.
+	 */
+	@Test
+	public void discardReconcileWhileCommitInFlight() throws Exception {
+		AtomicReference<Boolean> reconciled = new AtomicReference<>();
+		transactionTemplate.execute(status -> {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public int getOrder() { // TeamStatsReadModel 의 AFTER_COMMIT 리스너보다 먼저 호출
+					return Ordered.HIGHEST_PRECEDENCE;
+				}
+
+				@Override
+				public void afterCommit() { // 대사 스레드처럼 다른 스레드에서 커밋된 데이터를 읽는다.
+					reconciled.set(CompletableFuture.supplyAsync(teamStatsReadModel::reconcile).join());
+				}
+			});
+			em.find(Member.class, member2Id).changeTeam(em.find(Team.class, teamBId));
+			return null;
+		});
+
+		assertThat(reconciled.get()).isFalse();
+		assertStats(teamAId, "statsTeamA", 1, 10, 10, 10);
+		assertStats(teamBId, "statsTeamB", 3, 90, 40, 20);
+		assertThat(teamStatsReadModel.reconcile()).isTrue();
+		assertStats(teamBId, "statsTeamB", 3, 90, 40, 20);
+	}
+
+	private void moveMember2(Long teamId) {
+		transactionTemplate.execute(status -> {
+			em.find(Member.class, member2Id).changeTeam(em.find(Team.class, teamId));
+			return null;
+		});
+	}
+
+	private long teamSum(Long teamId) {
+		return teamStatsReadModel.getStats().stream()
+			.filter(dto -> dto.getTeamId().equals(teamId))
+			.mapToLong(TeamStatsDto::getSum)
+			.sum();
+	}
+
+	private void assertStats(Long teamId, String teamName, long count, long sum, int max, int min) {
+		Optional<TeamStatsDto> stats = teamStatsReadModel.getStats().stream()
+			.filter(dto -> dto.getTeamId().equals(teamId))
+			.findFirst();
+		assertThat(stats).isPresent();
+		assertThat(stats.get().getTeamName()).isEqualTo(teamName);
+		assertThat(stats.get().getCount()).isEqualTo(count);
+		assertThat(stats.get().getSum()).isEqualTo(sum);
+		assertThat(stats.get().getAvg()).isEqualTo((double)sum / count);
+		assertThat(stats.get().getMax()).isEqualTo(max);
+		assertThat(stats.get().getMin()).isEqualTo(min);
+	}
+}